@@ -85,6 +85,11 @@ class AstPrinter implements Expr.Visitor<String>, Stmt.Visitor<String> {
         return parenthesize("call", expr.callee, expr.arguments);
     }
 
+    @Override
+    public String visitInlineExpr(Expr.Inline expr) {
+        return parenthesize("inline", expr.call, expr.body);
+    }
+
     @Override
     public String visitIfStmt(Stmt.If stmt) {
         if (stmt.elseBranch == null)
@@ -111,6 +116,11 @@ class AstPrinter implements Expr.Visitor<String>, Stmt.Visitor<String> {
         return parenthesize("var", stmt.name, "=", stmt.initializer);
     }
 
+    @Override
+    public String visitForStmt(Stmt.For stmt) {
+        return parenthesize("for", stmt.initializer, stmt.condition, stmt.increment, stmt.body);
+    }
+
     @Override
     public String visitWhileStmt(Stmt.While stmt) {
         return parenthesize("while", stmt.condition, stmt.body);
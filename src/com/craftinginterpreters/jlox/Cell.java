@@ -0,0 +1,17 @@
+package com.craftinginterpreters.jlox;
+
+/*
+ * 被闭包捕获的变量的存储单元
+ *
+ * 声明变量的函数与捕获它的闭包共享同一个 Cell，从而看到彼此的赋值。
+ * 每次执行声明都会创建新的 Cell，循环体中创建的闭包各自捕获本次迭代的变量。
+ */
+final class Cell {
+    static final Cell[] NO_CELLS = new Cell[0];
+
+    Object value;
+
+    Cell(Object value) {
+        this.value = value;
+    }
+}
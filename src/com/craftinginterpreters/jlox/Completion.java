@@ -0,0 +1,18 @@
+package com.craftinginterpreters.jlox;
+
+/*
+ * 语句的完成状态
+ *
+ * 语句执行后把完成状态返回给外层语句，遇到非正常完成时外层停止执行后续语句并继续向上返回，
+ * 直到函数调用处，不再借助 Java 的异常机制跳出多层调用栈。
+ * 以后加入 break 与 continue 时在此增加对应的状态。
+ */
+enum Completion {
+    // 正常执行完毕
+    NORMAL,
+    // 执行了 return 语句，返回值暂存在 Interpreter 中
+    RETURN,
+    // 执行了尾调用 return f(...)，被调函数及其帧暂存在 Interpreter 中，
+    // 由当前函数的调用处接着执行，Java 栈不再增长
+    TAIL_CALL
+}
@@ -0,0 +1,36 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.Arrays;
+
+/*
+ * 语法糖的展开
+ *
+ * 语法树中保留了 for 语句，树遍历解释器可以直接执行它；
+ * 其他执行引擎把它展开为等价的 while 形式后按原来的方式编译：
+ * {
+ *   var i = 0;
+ *   while (i < 10) {
+ *     print i;
+ *     i = i + 1;
+ *   }
+ * }
+ */
+public final class Desugar {
+    private Desugar() {
+    }
+
+    public static Stmt forLoop(Stmt.For stmt) {
+        Stmt body = stmt.body;
+        // 如果有递增表达式，则将其和循环体打包到一个 block 中
+        if (stmt.increment != null)
+            body = new Stmt.Block(Arrays.asList(body, new Stmt.Expression(stmt.increment)));
+
+        // 加增量表达和循环体打包为 while 循环语句
+        body = new Stmt.While(stmt.condition, body);
+
+        // 有初始化语句则将初始化语句和 while 循环语句打包成 block
+        if (stmt.initializer != null)
+            body = new Stmt.Block(Arrays.asList(stmt.initializer, body));
+        return body;
+    }
+}
@@ -1,71 +1,45 @@
 package com.craftinginterpreters.jlox;
 
-import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
-/* 
+/*
  * 作用域是理论，环境是具体实现
  * 保存变量名及值的映射关系
- * 
+ *
+ * 全局环境中的变量可以随时动态定义（如 REPL 中逐行输入），每个名字对应一个固定的 Cell，
+ * Resolver 在语义分析时把 Cell 绑定到访问全局变量的节点上，运行时不再按名字查找；
+ * 局部变量的槽位已由 Resolver 在语义分析时分配好，存放在函数的帧中，
+ * 被闭包捕获的局部变量存放在 Cell 中，都不再需要环境。
  */
 
 class Environment {
+    // 尚未定义的全局变量的 Cell 中存放的值
+    static final Object UNDEFINED = new Object();
 
-    // 链表实现不同作用域
-    final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
+    // 全局变量，变量名是 Scanner 驻留的符号，按身份查找
+    private final Map<String, Cell> cells = new IdentityHashMap<>();
 
-    Environment() {
-        this.enclosing = null;
+    // 名字对应的全局 Cell，第一次访问时创建，变量定义之前其中是 UNDEFINED
+    Cell cell(String name) {
+        return cells.computeIfAbsent(name, key -> new Cell(UNDEFINED));
     }
 
-    Environment(Environment enclosing) {
-        this.enclosing = enclosing;
-    }
-
-    void define(String name, Object value) {
-        values.put(name, value);
-    }
-
-    Object get(Token name) {
+    static Object get(Cell cell, Token name) {
         // 此处的 name 意思是 variable name ， 类型为 Token
-        if (values.containsKey(name.lexeme))
-            return values.get(name.lexeme);
-        // 如果当前环境中没有找到变量，就在外部环境中尝试。
-        if (enclosing != null)
-            return enclosing.get(name);
+        Object value = cell.value;
+        if (value != UNDEFINED)
+            return value;
 
         throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
     }
 
-    Object getAt(int distance, String name) {
-        return ancestor(distance).values.get(name);
-    }
-
-    void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
-            return;
-        }
-
-        // 如果变量不在此环境中，它会递归地检查外部环境。
-        if (enclosing != null) {
-            enclosing.assign(name, value);
+    static void assign(Cell cell, Token name, Object value) {
+        if (cell.value != UNDEFINED) {
+            cell.value = value;
             return;
         }
 
         throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
     }
-
-    void assginAt(int distance, Token name, Object value) {
-        ancestor(distance).values.put(name.lexeme, value);
-    }
-
-    Environment ancestor(int distance) {
-        Environment environment = this;
-        for (int i = 0; i < distance; i++) {
-            environment = environment.enclosing;
-        }
-        return environment;
-    }
 }
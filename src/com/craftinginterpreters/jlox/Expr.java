@@ -2,12 +2,13 @@ package com.craftinginterpreters.jlox;
 
 import java.util.List;
 
-abstract class Expr {
+public abstract class Expr {
 
-    interface Visitor<R> {
+    public interface Visitor<R> {
     R visitAssignExpr(Assign expr);
     R visitBinaryExpr(Binary expr);
     R visitCallExpr(Call expr);
+    R visitInlineExpr(Inline expr);
     R visitGetExpr(Get expr);
     R visitSetExpr(Set expr);
     R visitThisExpr(This expr);
@@ -19,184 +20,226 @@ abstract class Expr {
     R visitVariableExpr(Variable expr);
     }
 
-    abstract <R> R accept(Visitor<R> visitor);
+    public abstract <R> R accept(Visitor<R> visitor);
 
-    static class Assign extends Expr {
+    public static class Assign extends Expr {
         Assign(Token name, Expr value) {
             this.name = name;
             this.value = value;
         }
 
-        final Token name;
-        final Expr value;
+        public final Token name;
+        public final Expr value;
+
+        Storage storage = Storage.GLOBAL;
+        int slot;
+        Cell global;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitAssignExpr(this);
         }
     }
 
-    static class Binary extends Expr {
+    public static class Binary extends Expr {
         Binary(Expr left, Token operator, Expr right) {
             this.left = left;
             this.operator = operator;
             this.right = right;
         }
 
-        final Expr left;
-        final Token operator;
-        final Expr right;
+        public final Expr left;
+        public final Token operator;
+        public final Expr right;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitBinaryExpr(this);
         }
     }
 
-    static class Call extends Expr {
+    public static class Call extends Expr {
         Call(Expr callee, Token paren, List<Expr> arguments) {
             this.callee = callee;
             this.paren = paren;
             this.arguments = arguments;
         }
 
-        final Expr callee;
-        final Token paren;
-        final List<Expr> arguments;
+        public final Expr callee;
+        public final Token paren;
+        public final List<Expr> arguments;
+
+        Stmt.Function declaration;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitCallExpr(this);
         }
     }
 
-    static class Get extends Expr {
+    public static class Inline extends Expr {
+        Inline(Expr.Call call, Token function, List<Token> params, Expr body) {
+            this.call = call;
+            this.function = function;
+            this.params = params;
+            this.body = body;
+        }
+
+        public final Expr.Call call;
+        public final Token function;
+        public final List<Token> params;
+        public final Expr body;
+
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitInlineExpr(this);
+        }
+    }
+
+    public static class Get extends Expr {
         Get(Expr object, Token name) {
             this.object = object;
             this.name = name;
         }
 
-        final Expr object;
-        final Token name;
+        public final Expr object;
+        public final Token name;
+
+        PropertyCache cache;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitGetExpr(this);
         }
     }
 
-    static class Set extends Expr {
+    public static class Set extends Expr {
         Set(Expr object, Token name, Expr value) {
             this.object = object;
             this.name = name;
             this.value = value;
         }
 
-        final Expr object;
-        final Token name;
-        final Expr value;
+        public final Expr object;
+        public final Token name;
+        public final Expr value;
+
+        PropertyCache cache;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitSetExpr(this);
         }
     }
 
-    static class This extends Expr {
+    public static class This extends Expr {
         This(Token keyword) {
             this.keyword = keyword;
         }
 
-        final Token keyword;
+        public final Token keyword;
+
+        Storage storage = Storage.GLOBAL;
+        int slot;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitThisExpr(this);
         }
     }
 
-    static class Super extends Expr {
+    public static class Super extends Expr {
         Super(Token keyword, Token method) {
             this.keyword = keyword;
             this.method = method;
         }
 
-        final Token keyword;
-        final Token method;
+        public final Token keyword;
+        public final Token method;
+
+        Storage storage = Storage.GLOBAL;
+        int slot;
+        Storage thisStorage = Storage.GLOBAL;
+        int thisSlot;
+        int index;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitSuperExpr(this);
         }
     }
 
-    static class Grouping extends Expr {
+    public static class Grouping extends Expr {
         Grouping(Expr expression) {
             this.expression = expression;
         }
 
-        final Expr expression;
+        public final Expr expression;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitGroupingExpr(this);
         }
     }
 
-    static class Literal extends Expr {
+    public static class Literal extends Expr {
         Literal(Object value) {
             this.value = value;
         }
 
-        final Object value;
+        public final Object value;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitLiteralExpr(this);
         }
     }
 
-    static class Logical extends Expr {
+    public static class Logical extends Expr {
         Logical(Expr left, Token operator, Expr right) {
             this.left = left;
             this.operator = operator;
             this.right = right;
         }
 
-        final Expr left;
-        final Token operator;
-        final Expr right;
+        public final Expr left;
+        public final Token operator;
+        public final Expr right;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitLogicalExpr(this);
         }
     }
 
-    static class Unary extends Expr {
+    public static class Unary extends Expr {
         Unary(Token operator, Expr right) {
             this.operator = operator;
             this.right = right;
         }
 
-        final Token operator;
-        final Expr right;
+        public final Token operator;
+        public final Expr right;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitUnaryExpr(this);
         }
     }
 
-    static class Variable extends Expr {
+    public static class Variable extends Expr {
         Variable(Token name) {
             this.name = name;
         }
 
-        final Token name;
+        public final Token name;
+
+        Storage storage = Storage.GLOBAL;
+        int slot;
+        Cell global;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitVariableExpr(this);
         }
     }
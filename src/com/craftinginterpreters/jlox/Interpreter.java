@@ -1,6 +1,5 @@
 package com.craftinginterpreters.jlox;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -22,15 +21,23 @@ LOX 类在 JAVA 中的表示
  */
 
 class Interpreter implements Expr.Visitor<Object>,
-        Stmt.Visitor<Void> {
+        Stmt.Visitor<Completion> {
 
     final Environment globals = new Environment();
-    // environment 会随着作用域改变而变化
-    private Environment environment = globals;
-    // 语义分析时记录局部变量所处的环境的层级
-    private final Map<Expr, Integer> locals = new HashMap<>();
-
-    void interpreter(List<Stmt> statements) {
+    // 当前函数的帧，函数中所有块的局部变量都按 Resolver 分配的槽位存放在这里
+    private Object[] frame;
+    // 当前函数捕获的外层变量
+    private Cell[] cells = Cell.NO_CELLS;
+    // return 语句的返回值，语句以 Completion.RETURN 完成时由函数调用处取走
+    private Object returnValue = null;
+    // 尾调用的被调函数及其帧，语句以 Completion.TAIL_CALL 完成时由函数调用处取走
+    JLoxFunction tailFunction = null;
+    Object[] tailFrame = null;
+
+    // frameSize 为顶层代码中块的局部变量所需帧的大小
+    void interpreter(List<Stmt> statements, int frameSize) {
+        frame = new Object[frameSize];
+        cells = Cell.NO_CELLS;
         try {
             for (Stmt statement : statements) {
                 execute(statement);
@@ -41,135 +48,265 @@ class Interpreter implements Expr.Visitor<Object>,
         }
     }
 
-    private void execute(Stmt stmt) {
-        stmt.accept(this);
+    private Completion execute(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    // 取出最近一次执行的 return 语句的返回值
+    Object takeReturnValue() {
+        Object value = returnValue;
+        returnValue = null;
+        return value;
+    }
+
+    // 被闭包捕获的局部变量每次执行声明时创建新的 Cell，
+    // 函数与类可能在自身的定义中引用自己，因此在求值之前创建
+    private void declare(int slot, boolean captured) {
+        if (captured)
+            frame[slot] = new Cell(null);
+    }
+
+    // 在当前作用域中定义变量, 全局变量存入 Resolver 绑定的 Cell, 局部变量放入 Resolver 分配的槽位
+    private void define(Cell global, int slot, boolean captured, Object value) {
+        if (slot < 0)
+            global.value = value;
+        else if (captured)
+            ((Cell) frame[slot]).value = value;
+        else
+            frame[slot] = value;
+    }
+
+    // 按 Resolver 确定的存放位置读取变量
+    private Object read(Storage storage, int slot, Cell global, Token name) {
+        switch (storage) {
+            case LOCAL:
+                return frame[slot];
+            case CELL:
+                return ((Cell) frame[slot]).value;
+            case UPVALUE:
+                return cells[slot].value;
+            default:
+                return Environment.get(global, name);
+        }
     }
 
-    // 语义分析时记录局部变量所处的环境的层级
-    void resolve(Expr expr, int depth) {
-        locals.put(expr, depth);
+    // 创建闭包时只取出它捕获的变量
+    private Cell[] capture(int[] captures) {
+        if (captures.length == 0)
+            return Cell.NO_CELLS;
+        Cell[] captured = new Cell[captures.length];
+        for (int i = 0; i < captures.length; i++) {
+            int capture = captures[i];
+            captured[i] = capture >= 0 ? (Cell) frame[capture] : cells[-1 - capture];
+        }
+        return captured;
     }
 
     @Override
-    public Void visitFunctionStmt(Stmt.Function stmt) {
-        JLoxFunction function = new JLoxFunction(stmt, environment, false);
-        environment.define(stmt.name.lexeme, function);
-        return null;
+    public Completion visitFunctionStmt(Stmt.Function stmt) {
+        declare(stmt.slot, stmt.captured);
+        JLoxFunction function = new JLoxFunction(stmt, capture(stmt.captures), false, false);
+        define(stmt.global, stmt.slot, stmt.captured, function);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitReturnStmt(Stmt.Return stmt) {
+    public Completion visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.tailCall)
+            return tailCall((Expr.Call) stmt.value);
         Object value = null;
         // 有返回值则对返回值求值
         if (stmt.value != null)
             value = evaluate(stmt.value);
-        // JLox 的 return 使用 Java 的异常机制跳出多层调用栈
-        throw new Return(value);
+        // 返回值暂存在解释器中，RETURN 状态沿语句逐层返回到函数调用处
+        returnValue = value;
+        return Completion.RETURN;
     }
 
     @Override
-    public Void visitIfStmt(Stmt.If stmt) {
+    public Completion visitIfStmt(Stmt.If stmt) {
         if (isTruthy(evaluate(stmt.condition)))
-            execute(stmt.thenBranch);
+            return execute(stmt.thenBranch);
         else if (stmt.elseBranch != null)
-            execute(stmt.elseBranch);
-        return null;
+            return execute(stmt.elseBranch);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitWhileStmt(Stmt.While stmt) {
+    public Completion visitWhileStmt(Stmt.While stmt) {
         while (isTruthy(evaluate(stmt.condition))) {
-            execute(stmt.body);
+            Completion completion = execute(stmt.body);
+            if (completion != Completion.NORMAL)
+                return completion;
         }
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
-        return null;
+    public Completion visitForStmt(Stmt.For stmt) {
+        if (stmt.initializer != null)
+            execute(stmt.initializer);
+        int slot = stmt.counted ? ((Stmt.Var) stmt.initializer).slot : -1;
+        if (slot >= 0 && frame[slot] instanceof Double)
+            return countedLoop(stmt, slot);
+        while (isTruthy(evaluate(stmt.condition))) {
+            Completion completion = execute(stmt.body);
+            if (completion != Completion.NORMAL)
+                return completion;
+            if (stmt.increment != null)
+                evaluate(stmt.increment);
+        }
+        return Completion.NORMAL;
     }
 
-    public void executeBlock(List<Stmt> statements,
-            Environment environment) {
-        // 备份上级环境
-        Environment previous = this.environment;
-        try {
-            this.environment = environment;
-
-            for (Stmt stmt : statements) {
-                execute(stmt);
+    /*
+     * 计数循环的循环变量只由递增表达式修改，用 double 维护它，
+     * 省去每次迭代对条件和递增表达式的求值与装箱拆箱。
+     * 循环体仍从帧中读取循环变量，所以每次递增后写回帧。
+     */
+    private Completion countedLoop(Stmt.For stmt, int slot) {
+        Expr.Binary condition = (Expr.Binary) stmt.condition;
+        Token operator = condition.operator;
+        double i = (double) frame[slot];
+        for (;;) {
+            Object limit = evaluate(condition.right);
+            checkNumberOperand(operator, limit);
+            double n = (double) limit;
+            boolean more;
+            switch (operator.type) {
+                case LESS:
+                    more = i < n;
+                    break;
+                case LESS_EQUAL:
+                    more = i <= n;
+                    break;
+                case GREATER:
+                    more = i > n;
+                    break;
+                default:
+                    more = i >= n;
+                    break;
             }
-        } finally {
-            // 恢复上级环境
-            this.environment = previous;
+            if (!more)
+                return Completion.NORMAL;
+            Completion completion = execute(stmt.body);
+            if (completion != Completion.NORMAL)
+                return completion;
+            i += stmt.step;
+            frame[slot] = i;
         }
     }
 
     @Override
-    public Void visitClassStmt(Stmt.Class stmt) {
-        environment.define(stmt.name.lexeme, null);
+    public Completion visitBlockStmt(Stmt.Block stmt) {
+        // 块的局部变量位于当前函数的帧中，不需要新环境
+        return executeStatements(stmt.statements);
+    }
+
+    // 执行到 return 语句时停止执行后续语句，并把完成状态返回给上层
+    private Completion executeStatements(List<Stmt> statements) {
+        for (Stmt stmt : statements) {
+            Completion completion = execute(stmt);
+            if (completion != Completion.NORMAL)
+                return completion;
+        }
+        return Completion.NORMAL;
+    }
+
+    // 在函数自己的帧中执行函数体
+    Completion executeBody(List<Stmt> body, Object[] frame, Cell[] cells) {
+        // 备份调用者的帧
+        Object[] previousFrame = this.frame;
+        Cell[] previousCells = this.cells;
+        try {
+            this.frame = frame;
+            this.cells = cells;
+            return executeStatements(body);
+        } finally {
+            // 恢复调用者的帧
+            this.frame = previousFrame;
+            this.cells = previousCells;
+        }
+    }
 
+    @Override
+    public Completion visitClassStmt(Stmt.Class stmt) {
         Object superclass = null;
         if (stmt.superclass != null) {
             superclass = evaluate(stmt.superclass);
             if (!(superclass instanceof JLoxClass))
                 throw new RuntimeError(stmt.superclass.name, "Superclass must be a class.");
 
-            // 为超类启用闭包，多次继承时使 super 能指向正确的类
-            environment = new Environment(environment);
-            environment.define("super", superclass);
+            /*
+             * super 是外层帧中的隐藏变量，方法通过捕获访问它，多次继承时使 super 能指向正确的类
+             * 类定义之后不会改变，方法中的各个 super 表达式的目标在这里一次查好，
+             * 变量中保存按 Expr.Super.index 排列的方法，不存在的方法留空，执行到时再报错
+             */
+            JLoxFunction[] targets = new JLoxFunction[stmt.supers.size()];
+            for (int i = 0; i < targets.length; i++)
+                targets[i] = ((JLoxClass) superclass).findMethod(stmt.supers.get(i).method.lexeme);
+            frame[stmt.superSlot] = new Cell(targets);
         }
+        // 方法可能引用类名，先为被捕获的类名创建 Cell
+        declare(stmt.slot, stmt.captured);
 
         Map<String, JLoxFunction> methods = new HashMap<>();
         for (Stmt.Function method : stmt.methods) {
             // 插入方法同时判读是否是 init 函数
-            JLoxFunction function = new JLoxFunction(method, environment,
-                    method.name.lexeme.equals("init"));
+            JLoxFunction function = new JLoxFunction(method, capture(method.captures),
+                    true, method.name.lexeme.equals("init"));
             methods.put(method.name.lexeme, function);
         }
         JLoxClass klass = new JLoxClass(stmt.name.lexeme, (JLoxClass) superclass, methods);
-        if (superclass != null) {
-            environment = environment.enclosing;
-        }
-        environment.assign(stmt.name, klass);
-        return null;
+        define(stmt.global, stmt.slot, stmt.captured, klass);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitVarStmt(Stmt.Var stmt) {
+    public Completion visitVarStmt(Stmt.Var stmt) {
+        declare(stmt.slot, stmt.captured);
         Object value = null;
         // 如果该变量有初始化式，我们就对其求值。如果没有则初始化为 null
         if (stmt.initializer != null)
             value = evaluate(stmt.initializer);
 
-        environment.define(stmt.name.lexeme, value);
-        return null;
+        define(stmt.global, stmt.slot, stmt.captured, value);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitExpressionStmt(Stmt.Expression stmt) {
+    public Completion visitExpressionStmt(Stmt.Expression stmt) {
         // 执行语句中的表达式
         evaluate(stmt.expression);
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitPrintStmt(Stmt.Print stmt) {
+    public Completion visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression);
         System.out.println(stringfy(value));
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
         // 赋值语句的值也是表达式
         Object value = evaluate(expr.value);
-        Integer distance = locals.get(expr);
-        if (distance != null)
-            environment.assginAt(distance, expr.name, value);
-        else
-            globals.assign(expr.name, value);
+        // 语义分析时已在节点上记录变量的存放位置及槽位
+        switch (expr.storage) {
+            case LOCAL:
+                frame[expr.slot] = value;
+                break;
+            case CELL:
+                ((Cell) frame[expr.slot]).value = value;
+                break;
+            case UPVALUE:
+                cells[expr.slot].value = value;
+                break;
+            default:
+                Environment.assign(expr.global, expr.name, value);
+                break;
+        }
         return value;
     }
 
@@ -274,52 +411,231 @@ class Interpreter implements Expr.Visitor<Object>,
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return lookUpVariable(expr.name, expr);
-    }
-
-    private Object lookUpVariable(Token name, Expr expr) {
-        Integer distance = locals.get(expr);
-        if (distance != null)
-            return environment.getAt(distance, name.lexeme);
-        else
-            return globals.get(name);
+        // 语义分析时已在节点上记录变量的存放位置及槽位
+        return read(expr.storage, expr.slot, expr.global, expr.name);
     }
 
     @Override
     public Object visitCallExpr(Expr.Call expr) {
+        // 方法调用 object.method(...) 直接以对象作为 this 调用，不创建绑定方法
+        if (expr.callee instanceof Expr.Get)
+            return invokeMethod((Expr.Get) expr.callee, expr);
+        // super.method(...) 同样直接以当前的 this 调用父类的方法
+        if (expr.callee instanceof Expr.Super) {
+            Expr.Super sup = (Expr.Super) expr.callee;
+            JLoxFunction method = superMethod(sup);
+            JLoxInstance instance = (JLoxInstance) read(sup.thisStorage, sup.thisSlot, null, sup.keyword);
+            return invoke(method, instance, expr);
+        }
+
         /*
          * 对被调用者的表达式求值
          * 通常情况下，这个表达式只是一个标识符,
          * 但也可能是一个执行结果为函数的表达式
          */
         Object callee = evaluate(expr.callee);
-        List<Object> arguments = new ArrayList<>();
-        for (Expr argument : expr.arguments) {
-            arguments.add(evaluate(argument));
+        return call(callee, expr);
+    }
+
+    /*
+     * 内联的全局函数调用
+     * 被调用的仍是内联时的函数声明创建的函数时，实参直接写入新帧，在其中对函数体求值，
+     * 省去调用的各项开销；全局变量已被重新赋值时按原来的调用执行。
+     */
+    @Override
+    public Object visitInlineExpr(Expr.Inline expr) {
+        Object callee = evaluate(expr.call.callee);
+        if (!(callee instanceof JLoxFunction) || !((JLoxFunction) callee).isDeclaredAt(expr.function))
+            return call(callee, expr.call);
+
+        Object[] frame = evaluateArguments(expr.call.arguments);
+        Object[] previousFrame = this.frame;
+        Cell[] previousCells = this.cells;
+        try {
+            this.frame = frame;
+            this.cells = Cell.NO_CELLS;
+            return evaluate(expr.body);
+        } finally {
+            this.frame = previousFrame;
+            this.cells = previousCells;
+        }
+    }
+
+    // 求值顺序与先取属性再调用一致：对象、属性查找及其错误、实参
+    private Object invokeMethod(Expr.Get get, Expr.Call expr) {
+        Object object = evaluate(get.object);
+        if (!(object instanceof JLoxInstance))
+            throw new RuntimeError(get.name, "Only instances have properties.");
+        JLoxInstance instance = (JLoxInstance) object;
+
+        if (get.cache == null)
+            get.cache = new PropertyCache();
+        JLoxFunction method = get.cache.method(instance, get.name);
+        if (method == null) {
+            // 字段遮蔽了同名方法，按普通调用处理
+            Object callee = get.cache.get(instance, get.name);
+            return call(callee, expr);
+        }
+        return invoke(method, instance, expr);
+    }
+
+    // 按实参数量选择定长入口，实参直接写入方法的帧
+    private Object invoke(JLoxFunction method, JLoxInstance instance, Expr.Call expr) {
+        List<Expr> arguments = expr.arguments;
+        switch (arguments.size()) {
+            case 0:
+                checkArity(method, 0, expr.paren);
+                return method.invoke0(this, instance);
+            case 1: {
+                Object a = evaluate(arguments.get(0));
+                checkArity(method, 1, expr.paren);
+                return method.invoke1(this, instance, a);
+            }
+            case 2: {
+                Object a = evaluate(arguments.get(0));
+                Object b = evaluate(arguments.get(1));
+                checkArity(method, 2, expr.paren);
+                return method.invoke2(this, instance, a, b);
+            }
+            case 3: {
+                Object a = evaluate(arguments.get(0));
+                Object b = evaluate(arguments.get(1));
+                Object c = evaluate(arguments.get(2));
+                checkArity(method, 3, expr.paren);
+                return method.invoke3(this, instance, a, b, c);
+            }
+            default: {
+                Object[] values = evaluateArguments(arguments);
+                checkArity(method, values.length, expr.paren);
+                return method.invoke(this, instance, values);
+            }
+        }
+    }
+
+    /*
+     * 尾调用
+     * 求值顺序与错误检查与普通调用相同，但被调用的是 Lox 函数或方法时不在这里调用它，
+     * 而是准备好它的帧，以 Completion.TAIL_CALL 返回到当前函数的调用处，
+     * 由调用处在同一个 Java 栈帧中接着执行被调函数。
+     * 类与构造函数仍按普通调用执行。
+     */
+    private Completion tailCall(Expr.Call expr) {
+        Object callee;
+        JLoxInstance receiver = null;
+        JLoxFunction method = null;
+        if (expr.callee instanceof Expr.Get) {
+            Expr.Get get = (Expr.Get) expr.callee;
+            Object object = evaluate(get.object);
+            if (!(object instanceof JLoxInstance))
+                throw new RuntimeError(get.name, "Only instances have properties.");
+            receiver = (JLoxInstance) object;
+            if (get.cache == null)
+                get.cache = new PropertyCache();
+            method = get.cache.method(receiver, get.name);
+            // 字段遮蔽了同名方法，按普通调用处理
+            callee = method != null ? method : get.cache.get(receiver, get.name);
+        } else if (expr.callee instanceof Expr.Super) {
+            Expr.Super sup = (Expr.Super) expr.callee;
+            method = superMethod(sup);
+            receiver = (JLoxInstance) read(sup.thisStorage, sup.thisSlot, null, sup.keyword);
+            callee = method;
+        } else {
+            callee = evaluate(expr.callee);
+        }
+
+        Object[] arguments = evaluateArguments(expr.arguments);
+        JLoxFunction function;
+        if (method != null) {
+            checkArity(method, arguments.length, expr.paren);
+            function = method;
+        } else {
+            JLoxCallable callable = callable(callee, arguments.length, expr);
+            if (!(callable instanceof JLoxFunction) || ((JLoxFunction) callable).isInitializer()) {
+                returnValue = callable.call(this, arguments);
+                return Completion.RETURN;
+            }
+            function = (JLoxFunction) callable;
+            receiver = null;
+        }
+        if (function.isInitializer()) {
+            returnValue = function.invoke(this, receiver, arguments);
+            return Completion.RETURN;
         }
 
+        tailFunction = function;
+        tailFrame = function.frame(receiver, arguments);
+        return Completion.TAIL_CALL;
+    }
+
+    // 先对实参求值，再检查被调用者，按实参数量选择定长入口
+    private Object call(Object callee, Expr.Call expr) {
+        List<Expr> arguments = expr.arguments;
+        switch (arguments.size()) {
+            case 0:
+                return callable(callee, 0, expr).call0(this);
+            case 1: {
+                Object a = evaluate(arguments.get(0));
+                return callable(callee, 1, expr).call1(this, a);
+            }
+            case 2: {
+                Object a = evaluate(arguments.get(0));
+                Object b = evaluate(arguments.get(1));
+                return callable(callee, 2, expr).call2(this, a, b);
+            }
+            case 3: {
+                Object a = evaluate(arguments.get(0));
+                Object b = evaluate(arguments.get(1));
+                Object c = evaluate(arguments.get(2));
+                return callable(callee, 3, expr).call3(this, a, b, c);
+            }
+            default: {
+                Object[] values = evaluateArguments(arguments);
+                return callable(callee, values.length, expr).call(this, values);
+            }
+        }
+    }
+
+    private Object[] evaluateArguments(List<Expr> argumentExprs) {
+        Object[] arguments = new Object[argumentExprs.size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = evaluate(argumentExprs.get(i));
+        }
+        return arguments;
+    }
+
+    // 检查被调用者可被调用且实参数量正确，通过检查的 Lox 函数的声明记录在调用处，
+    // 再次调用同一声明创建的函数时不必重复检查。
+    // 只记录声明而不记录函数对象，调用处不会让闭包和它捕获的变量一直存活
+    private JLoxCallable callable(Object callee, int count, Expr.Call expr) {
+        if (callee instanceof JLoxFunction && ((JLoxFunction) callee).declaration() == expr.declaration)
+            return (JLoxFunction) callee;
         // 防止被调函数不是可被调用的对象
         if (!(callee instanceof JLoxCallable)) {
             throw new RuntimeError(expr.paren, "Can only call functions and classes");
         }
         JLoxCallable function = (JLoxCallable) callee;
+        checkArity(function, count, expr.paren);
+        if (function instanceof JLoxFunction)
+            expr.declaration = ((JLoxFunction) function).declaration();
+        return function;
+    }
 
-        // 判断传入实参与被调函数形参数量是否一致
-        if (arguments.size() != function.arity()) {
-            throw new RuntimeError(expr.paren, "Expected " +
+    // 判断传入实参与被调函数形参数量是否一致
+    private void checkArity(JLoxCallable function, int count, Token paren) {
+        if (count != function.arity()) {
+            throw new RuntimeError(paren, "Expected " +
                     function.arity() + " arguments but got " +
-                    arguments.size() + ".");
+                    count + ".");
         }
-
-        return function.call(this, arguments);
-
     }
 
     @Override
     public Object visitGetExpr(Expr.Get expr) {
         Object object = evaluate(expr.object);
         if (object instanceof JLoxInstance) {
-            return ((JLoxInstance) object).get(expr.name);
+            if (expr.cache == null)
+                expr.cache = new PropertyCache();
+            return expr.cache.get((JLoxInstance) object, expr.name);
         }
 
         throw new RuntimeError(expr.name, "Only instances have properties.");
@@ -333,22 +649,31 @@ class Interpreter implements Expr.Visitor<Object>,
             throw new RuntimeError(expr.name, "Only instances have fields.");
 
         Object value = evaluate(expr.value);
-        ((JLoxInstance) object).set(expr.name, value);
+        if (expr.cache == null)
+            expr.cache = new PropertyCache();
+        expr.cache.set((JLoxInstance) object, expr.name, value);
         return value;
     }
 
     @Override
     public Object visitSuperExpr(Expr.Super expr)
     {
-        int distance = locals.get(expr);
-        JLoxClass superclass = (JLoxClass)environment.getAt(distance, "super");
-        JLoxInstance object = (JLoxInstance)environment.getAt(distance-1, "this");
-        JLoxFunction method = superclass.findMethod(expr.method.lexeme);
+        JLoxFunction method = superMethod(expr);
+        JLoxInstance object = (JLoxInstance)read(expr.thisStorage, expr.thisSlot, null, expr.keyword);
         return method.bind(object);
     }
+
+    // 定义类时已查好的 super 方法
+    private JLoxFunction superMethod(Expr.Super expr) {
+        JLoxFunction[] targets = (JLoxFunction[]) read(expr.storage, expr.slot, null, expr.keyword);
+        JLoxFunction method = targets[expr.index];
+        if (method == null)
+            throw new RuntimeError(expr.method, "Undefined property '" + expr.method.lexeme + "'.");
+        return method;
+    }
     @Override
     public Object visitThisExpr(Expr.This expr) {
-        return lookUpVariable(expr.keyword, expr);
+        return read(expr.storage, expr.slot, null, expr.keyword);
     }
 
     // 对子表达式求值
@@ -356,7 +681,7 @@ class Interpreter implements Expr.Visitor<Object>,
         return expr.accept(this);
     }
 
-    private boolean isEqual(Object a, Object b) {
+    static boolean isEqual(Object a, Object b) {
         if (a == null && b == null)
             return true;
         // 确保调用 a.equals() 时 a 不为 null
@@ -366,7 +691,7 @@ class Interpreter implements Expr.Visitor<Object>,
     }
 
     // false 和 nil 是假，其他都是真
-    private boolean isTruthy(Object object) {
+    static boolean isTruthy(Object object) {
         if (object == null)
             return false;
         if (object instanceof Boolean)
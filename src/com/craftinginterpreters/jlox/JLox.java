@@ -5,9 +5,15 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 
+import com.craftinginterpreters.jlox.closures.ClosureInterpreter;
+import com.craftinginterpreters.jlox.compiler.JvmCompiler;
+import com.craftinginterpreters.jlox.nodes.NodeInterpreter;
+import com.craftinginterpreters.jlox.vm.VM;
+
 public class JLox {
 
     // 扫描和构建抽象语法树出现错误
@@ -15,20 +21,75 @@ public class JLox {
     // 表达式求值出现错误
     static boolean hadRuntimeError = false;
 
+    // 执行引擎：树遍历解释器、字节码虚拟机、自特化节点树、闭包编译或编译为 JVM 字节码
+    private enum Engine {
+        TREE,
+        VM,
+        NODES,
+        CLOSURES,
+        JVM
+    }
+
+    private static Engine engine = Engine.TREE;
+    // 是否在执行前优化语法树，--no-opt 关闭，便于对比
+    private static boolean optimize = true;
+
     // 解释器——表达式求值
     private static final Interpreter interpreter = new Interpreter();
+    // 顶层代码中块的局部变量所需帧的大小，由语义分析得出
+    private static int frameSize = 0;
+    // 字节码虚拟机
+    private static final VM vm = new VM();
+    // 自特化节点树
+    private static final NodeInterpreter nodes = new NodeInterpreter();
+    // 编译为 lambda 树
+    private static final ClosureInterpreter closures = new ClosureInterpreter();
+    // JVM 字节码编译器
+    private static final JvmCompiler jvm = new JvmCompiler();
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
-            System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        if (args.length > 0 && args[0].equals("compile")) {
+            if (args.length < 2 || args.length > 3)
+                usage();
+            compileFile(args[1], args.length == 3 ? args[2] : null);
+            return;
+        }
+
+        String script = null;
+        for (String arg : args) {
+            if (arg.startsWith("--engine=")) {
+                engine = parseEngine(arg.substring("--engine=".length()));
+            } else if (arg.equals("--no-opt")) {
+                optimize = false;
+            } else if (script == null && !arg.startsWith("--")) {
+                script = arg;
+            } else {
+                usage();
+            }
+        }
+
+        if (script != null) {
+            runFile(script);
         } else {
             runPrompt();
         }
     }
 
+    private static Engine parseEngine(String name) {
+        for (Engine value : Engine.values()) {
+            if (value.name().equalsIgnoreCase(name))
+                return value;
+        }
+        usage();
+        return null;
+    }
+
+    private static void usage() {
+        System.out.println("Usage: jlox [--engine=tree|vm|nodes|closures|jvm] [--no-opt] [script]");
+        System.out.println("       jlox compile script [output.jar]");
+        System.exit(64);
+    }
+
     private static void runFile(String path) throws IOException {
         byte[] bytes = Files.readAllBytes((Paths.get(path)));
         // Charset.defaultCharset()获取系统默认的字符编码，将字节数组转换为对应的字符串。
@@ -41,6 +102,20 @@ public class JLox {
             System.exit(70);
     }
 
+    // 把脚本编译为可执行 jar，默认与脚本同名
+    private static void compileFile(String path, String output) throws IOException {
+        byte[] bytes = Files.readAllBytes((Paths.get(path)));
+        List<Stmt> statements = parse(new String(bytes, Charset.defaultCharset()));
+        if (hadError)
+            System.exit(65);
+
+        if (output == null)
+            output = path.replaceFirst("\\.lox$", "") + ".jar";
+        jvm.writeJar(statements, Path.of(output));
+        if (hadError)
+            System.exit(65);
+    }
+
     private static void runPrompt() throws IOException {
         InputStreamReader input = new InputStreamReader(System.in);
         BufferedReader reader = new BufferedReader(input);
@@ -58,6 +133,32 @@ public class JLox {
     }
 
     private static void run(String source) {
+        List<Stmt> statements = parse(source);
+        if (hadError)
+            return;
+
+        // 解释运行表达式
+        switch (engine) {
+            case VM:
+                vm.interpret(statements);
+                break;
+            case NODES:
+                nodes.interpret(statements);
+                break;
+            case CLOSURES:
+                closures.interpret(statements);
+                break;
+            case JVM:
+                jvm.run(statements);
+                break;
+            default:
+                interpreter.interpreter(statements, frameSize);
+                break;
+        }
+    }
+
+    // 扫描、构建抽象语法树并进行语义分析，出错时设置 hadError
+    private static List<Stmt> parse(String source) {
         // 扫描词法单元
         Scanner scanner = new Scanner(source);
         List<Token> tokens = scanner.scanTokens();
@@ -67,33 +168,45 @@ public class JLox {
         List<Stmt> statements = parser.parse();
 
         if (hadError)
-            return;
+            return statements;
         // 打印抽象语法树
         // System.out.println(new AstPrinter().print(statements));
 
         // 通过语义分析实现闭包
-        Resolver resolver = new Resolver(interpreter);
-        resolver.resolve(statements);
-        
-        if (hadError)
-            return;
-        // 解释运行表达式
-        interpreter.interpreter(statements);
+        Resolver resolver = new Resolver(interpreter.globals);
+        frameSize = resolver.resolve(statements);
+        if (hadError || !optimize)
+            return statements;
+
+        // 常量折叠、常量传播与删除不可达代码，节点改变后重新分析以分配槽位
+        statements = new Optimizer().optimizeProgram(statements);
+        frameSize = new Resolver(interpreter.globals).resolve(statements);
+        return statements;
     }
 
-    static void error(int line, String message) {
+    public static void error(int line, String message) {
         report(line, "", message);
     }
 
-    static void error(Token token, String message) {
+    // 编译阶段的错误，不对应源码中的某一行
+    public static void error(String message) {
+        System.err.println("Error: " + message);
+        hadError = true;
+    }
+
+    public static void error(Token token, String message) {
         if (token.type == TokenType.EOF)
             report(token.line, "at end", message);
         else
             report(token.line, " at '" + token.lexeme + "'", message);
     }
 
-    static void runtimeError(RuntimeError error) {
-        System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
+    public static void runtimeError(RuntimeError error) {
+        runtimeError(error.token.line, error.getMessage());
+    }
+
+    public static void runtimeError(int line, String message) {
+        System.err.println(message + "\n[line " + line + "]");
         hadRuntimeError = true;
     }
 
@@ -1,11 +1,33 @@
 package com.craftinginterpreters.jlox;
 
-import java.util.List;
-
+/*
+ * 可调用对象
+ *
+ * 除了以数组传入实参的通用入口，还提供 0 至 3 个实参的定长入口，
+ * 调用处按实参数量选择入口，函数可以把实参直接写入自己的帧，不必为每次调用分配实参列表。
+ * 调用者负责在调用前检查实参数量与 arity 一致。
+ */
 interface JLoxCallable {
+    Object[] NO_ARGUMENTS = new Object[0];
 
     // 函数期望的参数数量
     int arity();
-    Object call(Interpreter interpreter, List<Object> arguments);
 
+    Object call(Interpreter interpreter, Object[] arguments);
+
+    default Object call0(Interpreter interpreter) {
+        return call(interpreter, NO_ARGUMENTS);
+    }
+
+    default Object call1(Interpreter interpreter, Object a) {
+        return call(interpreter, new Object[] { a });
+    }
+
+    default Object call2(Interpreter interpreter, Object a, Object b) {
+        return call(interpreter, new Object[] { a, b });
+    }
+
+    default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return call(interpreter, new Object[] { a, b, c });
+    }
 }
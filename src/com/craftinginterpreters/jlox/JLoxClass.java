@@ -1,6 +1,6 @@
 package com.craftinginterpreters.jlox;
 
-import java.util.List;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
 public class JLoxClass implements JLoxCallable {
@@ -8,43 +8,78 @@ public class JLoxClass implements JLoxCallable {
 
     // 超类
     final JLoxClass superclass;
+    // 展平的方法表，包含继承的方法，类创建后不再改变；方法名是驻留的符号，按身份查找
     private final Map<String, JLoxFunction> methods;
+    // 构造函数 init
+    private final JLoxFunction initializer;
+    // 有构造函数元数为构造函数的参数数量，无构造函数元数为 0
+    private final int arity;
+    // 该类实例的初始形状
+    final Shape rootShape = new Shape();
+    // 该类的实例目前最多有过的字段数，新实例按它预先分配字段数组，构造时添加字段不必扩容
+    int fieldCount = 0;
 
     JLoxClass(String name, JLoxClass superclass, Map<String, JLoxFunction> methods) {
         this.name = name;
         this.superclass = superclass;
-        this.methods = methods;
+        // 先复制超类的方法表，再用类自身的方法覆盖，查找方法时不再沿继承链逐级查找
+        Map<String, JLoxFunction> table = new IdentityHashMap<>();
+        if (superclass != null)
+            table.putAll(superclass.methods);
+        table.putAll(methods);
+        this.methods = table;
+        this.initializer = table.get("init");
+        this.arity = initializer != null ? initializer.arity() : 0;
     }
 
     JLoxFunction findMethod(String name) {
-        // 优先返回类自身的方法，其次返回超类的方法
-        if (methods.containsKey(name))
-            return methods.get(name);
-        if (superclass != null)
-            return superclass.findMethod(name);
-        return null;
+        return methods.get(name);
     }
 
     @Override
-    public Object call(Interpreter interpreter,
-            List<Object> arguments) {
-
+    public Object call(Interpreter interpreter, Object[] arguments) {
         JLoxInstance instance = new JLoxInstance(this);
         // 构造函数 init
-        JLoxFunction initializer = findMethod("init");
         if (initializer != null)
-            initializer.bind(instance).call(interpreter, arguments);
+            initializer.invoke(interpreter, instance, arguments);
         return instance;
     }
 
     @Override
-    public int arity() {
-        // 有构造函数元数为构造函数的参数数量
-        JLoxFunction initializer = findMethod("init");
+    public Object call0(Interpreter interpreter) {
+        JLoxInstance instance = new JLoxInstance(this);
+        if (initializer != null)
+            initializer.invoke0(interpreter, instance);
+        return instance;
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        JLoxInstance instance = new JLoxInstance(this);
+        if (initializer != null)
+            initializer.invoke1(interpreter, instance, a);
+        return instance;
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        JLoxInstance instance = new JLoxInstance(this);
+        if (initializer != null)
+            initializer.invoke2(interpreter, instance, a, b);
+        return instance;
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        JLoxInstance instance = new JLoxInstance(this);
         if (initializer != null)
-            return initializer.arity();
-        // 无构造函数元数为 0
-        return 0;
+            initializer.invoke3(interpreter, instance, a, b, c);
+        return instance;
+    }
+
+    @Override
+    public int arity() {
+        return arity;
     }
 
     @Override
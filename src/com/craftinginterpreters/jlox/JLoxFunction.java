@@ -1,52 +1,149 @@
 package com.craftinginterpreters.jlox;
 
-import java.util.List;
-
 class JLoxFunction implements JLoxCallable {
     private final Stmt.Function declaration;
 
-    // 实现闭包
-    private final Environment closure;
+    // 实现闭包，只保存函数实际引用的外层变量
+    private final Cell[] cells;
 
+    // 方法的 this 位于函数帧的 0 号槽位
+    private final boolean isMethod;
     // init 函数在实例创建时已经执行，再次手动强制返回 this
     private final boolean isInitializer;
+    // 方法作为值被取出时绑定的实例，类中保存的方法为 null
+    private final JLoxInstance receiver;
+    // 形参数量，以及第一个形参在帧中的槽位
+    private final int arity;
+    private final int firstParam;
+
+    JLoxFunction(Stmt.Function declaration, Cell[] cells,
+            boolean isMethod, boolean isInitializer) {
+        this(declaration, cells, isMethod, isInitializer, null);
+    }
 
-    JLoxFunction(Stmt.Function declaration, Environment closure, boolean isInitializer) {
+    private JLoxFunction(Stmt.Function declaration, Cell[] cells,
+            boolean isMethod, boolean isInitializer, JLoxInstance receiver) {
         this.declaration = declaration;
-        this.closure = closure;
+        this.cells = cells;
+        this.isMethod = isMethod;
         this.isInitializer = isInitializer;
+        this.receiver = receiver;
+        this.arity = declaration.params.size();
+        this.firstParam = isMethod ? 1 : 0;
     }
 
     @Override
-    public Object call(Interpreter interpreter,
-            List<Object> arguments) {
-        // 定义函数内部环境变量
-        Environment environment = new Environment(closure);
-
-        // 为形参的参数名赋值
-        for (int i = 0; i < declaration.params.size(); i++) {
-            environment.define(declaration.params.get(i).lexeme, arguments.get(i));
-        }
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        return invoke(interpreter, receiver, arguments);
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        return invoke0(interpreter, receiver);
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        return invoke1(interpreter, receiver, a);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        return invoke2(interpreter, receiver, a, b);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return invoke3(interpreter, receiver, a, b, c);
+    }
+
+    // 以 receiver 作为 this 调用方法，方法调用时不必先创建绑定方法
+    Object invoke(Interpreter interpreter, JLoxInstance receiver, Object[] arguments) {
+        return execute(interpreter, receiver, frame(receiver, arguments));
+    }
 
-        try {
-            interpreter.executeBlock(declaration.body, environment);
-        } catch (Return returnvalue) {
-            // 初始化语句中执行 return 总是返回 this
-            if (isInitializer)
-                return closure.getAt(0, "this");
-            return returnvalue.value;
+    // 创建填好实参的帧，receiver 为 null 时使用绑定的实例
+    Object[] frame(JLoxInstance receiver, Object[] arguments) {
+        Object[] frame = newFrame(receiver != null ? receiver : this.receiver);
+        System.arraycopy(arguments, 0, frame, firstParam, arguments.length);
+        return frame;
+    }
+
+    boolean isInitializer() {
+        return isInitializer;
+    }
+
+    Stmt.Function declaration() {
+        return declaration;
+    }
+
+    // 是否由 name 处的函数声明创建，用于检查内联的前提是否仍然成立
+    boolean isDeclaredAt(Token name) {
+        return declaration.name == name;
+    }
+
+    // 定长入口把实参直接写入帧中形参的槽位
+    Object invoke0(Interpreter interpreter, JLoxInstance receiver) {
+        return execute(interpreter, receiver, newFrame(receiver));
+    }
+
+    Object invoke1(Interpreter interpreter, JLoxInstance receiver, Object a) {
+        Object[] frame = newFrame(receiver);
+        frame[firstParam] = a;
+        return execute(interpreter, receiver, frame);
+    }
+
+    Object invoke2(Interpreter interpreter, JLoxInstance receiver, Object a, Object b) {
+        Object[] frame = newFrame(receiver);
+        frame[firstParam] = a;
+        frame[firstParam + 1] = b;
+        return execute(interpreter, receiver, frame);
+    }
+
+    Object invoke3(Interpreter interpreter, JLoxInstance receiver, Object a, Object b, Object c) {
+        Object[] frame = newFrame(receiver);
+        frame[firstParam] = a;
+        frame[firstParam + 1] = b;
+        frame[firstParam + 2] = c;
+        return execute(interpreter, receiver, frame);
+    }
+
+    // 函数的帧，形参与函数体中的局部变量共用，方法的 this 位于 0 号槽位
+    private Object[] newFrame(JLoxInstance receiver) {
+        Object[] frame = new Object[declaration.frameSize];
+        if (isMethod)
+            frame[0] = receiver;
+        return frame;
+    }
+
+    // 执行函数体，函数体以尾调用结束时在这里循环执行被调函数，Java 栈不再增长
+    private Object execute(Interpreter interpreter, JLoxInstance receiver, Object[] frame) {
+        JLoxFunction function = this;
+        Completion completion;
+        for (;;) {
+            // 被内层函数捕获的形参放入 Cell
+            for (int cellSlot : function.declaration.cellSlots) {
+                frame[cellSlot] = new Cell(frame[cellSlot]);
+            }
+            completion = interpreter.executeBody(function.declaration.body, frame, function.cells);
+            if (completion != Completion.TAIL_CALL)
+                break;
+            function = interpreter.tailFunction;
+            frame = interpreter.tailFrame;
+            interpreter.tailFunction = null;
+            interpreter.tailFrame = null;
         }
+        Object value = completion == Completion.RETURN ? interpreter.takeReturnValue() : null;
 
-        // init 函数在实例创建时自动执行，用户手动执行 init 强制返回 this,
+        // init 函数在实例创建时自动执行，用户手动执行 init 或在其中 return 都返回 this
         if (isInitializer)
-            return closure.getAt(0, "this");
-        return null;
-
+            return receiver;
+        return value;
     }
 
     @Override
     public int arity() {
-        return declaration.params.size();
+        return arity;
     }
 
     @Override
@@ -54,9 +151,8 @@ class JLoxFunction implements JLoxCallable {
         return "<fn " + declaration.name.lexeme + ">";
     }
 
+    // 方法作为值被取出时才需要绑定 this
     JLoxFunction bind(JLoxInstance instance) {
-        Environment environment = new Environment(closure);
-        environment.define("this", instance);
-        return new JLoxFunction(declaration, environment, isInitializer);
+        return new JLoxFunction(declaration, cells, isMethod, isInitializer, instance);
     }
-}
\ No newline at end of file
+}
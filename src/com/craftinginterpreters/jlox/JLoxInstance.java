@@ -1,14 +1,19 @@
 package com.craftinginterpreters.jlox;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public class JLoxInstance {
-    private JLoxClass klass;
-    private final Map<String, Object> fields = new HashMap<>();
+    private static final Object[] NO_FIELDS = new Object[0];
+
+    final JLoxClass klass;
+    // 字段布局由形状描述，字段值按槽位存放
+    Shape shape;
+    Object[] values;
 
     JLoxInstance(JLoxClass klass) {
         this.klass = klass;
+        this.shape = klass.rootShape;
+        this.values = klass.fieldCount == 0 ? NO_FIELDS : new Object[klass.fieldCount];
     }
 
     @Override
@@ -17,8 +22,9 @@ public class JLoxInstance {
     }
 
     Object get(Token name) {
-        if (fields.containsKey(name.lexeme))
-            return fields.get(name.lexeme);
+        int slot = shape.slotOf(name.lexeme);
+        if (slot >= 0)
+            return values[slot];
         JLoxFunction method = klass.findMethod(name.lexeme);
         if (method != null)
             return method.bind(this);
@@ -28,6 +34,23 @@ public class JLoxInstance {
     }
 
     void set(Token name, Object value) {
-        fields.put(name.lexeme, value);
+        int slot = shape.slotOf(name.lexeme);
+        if (slot < 0) {
+            // 新字段，迁移到子形状
+            addField(shape.withField(name.lexeme), value);
+            return;
+        }
+        values[slot] = value;
+    }
+
+    // 迁移到新增了一个字段的形状 next，新字段位于最后一个槽位
+    void addField(Shape next, Object value) {
+        int slot = next.size - 1;
+        if (slot >= values.length)
+            values = Arrays.copyOf(values, Math.max(4, values.length * 2));
+        values[slot] = value;
+        shape = next;
+        if (next.size > klass.fieldCount)
+            klass.fieldCount = next.size;
     }
 }
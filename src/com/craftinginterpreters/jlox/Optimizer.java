@@ -0,0 +1,441 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+/*
+ * 语法树优化
+ *
+ * 在语义分析之后、执行之前对语法树做一遍化简：
+ * 1. 常量折叠：字面量之间的算术、比较、字符串拼接、逻辑运算与一元运算直接求值；
+ * 2. 常量传播：以常量初始化且之后从未被赋值的局部变量，其引用替换为该常量；
+ * 3. 删除不可达代码：条件为常量的 if 只保留会执行的分支，条件为假的 while 整体删除，
+ *    return 之后的语句以及没有副作用的表达式语句也被删除；
+ * 4. 函数内联：函数体只有一条 return 语句的小型非递归全局函数，在调用处替换为内联节点。
+ *    全局变量随时可能被重新赋值，内联节点执行时先检查被调用的仍是该函数，否则按普通调用执行。
+ *
+ * 运行时会出错的运算（如数字与字符串相加）保持原样，错误仍在执行时按原来的行号报告。
+ * 语法树节点不可变，发生变化的节点会重新创建，优化后需要重新进行语义分析以分配槽位。
+ * 删除语句时返回 null。
+ */
+class Optimizer implements Expr.Visitor<Expr>,
+        Stmt.Visitor<Stmt> {
+    // 内联的函数体最多包含的节点数
+    private static final int MAX_INLINE_SIZE = 16;
+
+    // 局部作用域中声明的变量，常量变量对应它的值，其他变量为 null
+    private final Stack<Map<String, Expr.Literal>> scopes = new Stack<>();
+    // 可以内联的全局函数，第一遍化简之后才确定
+    private Map<String, Stmt.Function> inlinable = new HashMap<>();
+
+    // 先化简整个程序，再用化简后的函数体内联调用
+    List<Stmt> optimizeProgram(List<Stmt> statements) {
+        List<Stmt> result = optimize(statements);
+        inlinable = findInlinable(result);
+        if (inlinable.isEmpty())
+            return result;
+        return optimize(result);
+    }
+
+    private List<Stmt> optimize(List<Stmt> statements) {
+        List<Stmt> result = new ArrayList<>();
+        for (Stmt stmt : statements) {
+            Stmt optimized = optimize(stmt);
+            if (optimized == null)
+                continue;
+            result.add(optimized);
+            // return 之后的语句不会执行
+            if (optimized instanceof Stmt.Return)
+                break;
+        }
+        return result;
+    }
+
+    private Stmt optimize(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private Expr optimize(Expr expr) {
+        return expr.accept(this);
+    }
+
+    // if 与 while 的分支被删除后用空块代替
+    private Stmt optimizeBranch(Stmt stmt) {
+        Stmt optimized = optimize(stmt);
+        if (optimized == null)
+            return new Stmt.Block(new ArrayList<>());
+        return optimized;
+    }
+
+    private List<Expr> optimizeAll(List<Expr> exprs) {
+        List<Expr> result = new ArrayList<>();
+        for (Expr expr : exprs) {
+            result.add(optimize(expr));
+        }
+        return result;
+    }
+
+    private void declare(Token name, Expr.Literal constant) {
+        if (!scopes.isEmpty())
+            scopes.peek().put(name.lexeme, constant);
+    }
+
+    private boolean isLocal(Token name) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            if (scopes.get(i).containsKey(name.lexeme))
+                return true;
+        }
+        return false;
+    }
+
+    // 由内向外查找局部变量，不是常量或是全局变量时返回 null
+    private Expr.Literal constantOf(Token name) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Map<String, Expr.Literal> scope = scopes.get(i);
+            if (scope.containsKey(name.lexeme))
+                return scope.get(name.lexeme);
+        }
+        return null;
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        scopes.push(new HashMap<>());
+        List<Stmt> statements = optimize(stmt.statements);
+        scopes.pop();
+        if (statements.isEmpty())
+            return null;
+        return new Stmt.Block(statements);
+    }
+
+    @Override
+    public Stmt visitClassStmt(Stmt.Class stmt) {
+        declare(stmt.name, null);
+        // 超类必须保持为变量表达式，不做替换
+        List<Stmt.Function> methods = new ArrayList<>();
+        for (Stmt.Function method : stmt.methods) {
+            methods.add(optimizeFunction(method));
+        }
+        return new Stmt.Class(stmt.name, stmt.superclass, methods);
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        Expr expression = optimize(stmt.expression);
+        // 字面量没有副作用
+        if (expression instanceof Expr.Literal)
+            return null;
+        return expression == stmt.expression ? stmt : new Stmt.Expression(expression);
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        declare(stmt.name, null);
+        return optimizeFunction(stmt);
+    }
+
+    private Stmt.Function optimizeFunction(Stmt.Function stmt) {
+        scopes.push(new HashMap<>());
+        for (Token param : stmt.params) {
+            declare(param, null);
+        }
+        List<Stmt> body = optimize(stmt.body);
+        scopes.pop();
+        return new Stmt.Function(stmt.name, stmt.params, body);
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value == null)
+            return stmt;
+        // return f(...) 中的调用由解释器按尾调用执行，内联后就不再是尾调用，相互递归时会耗尽栈
+        Expr value = stmt.value instanceof Expr.Call ? call((Expr.Call) stmt.value, false) : optimize(stmt.value);
+        return value == stmt.value ? stmt : new Stmt.Return(stmt.keyword, value);
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        Expr condition = optimize(stmt.condition);
+        // 条件为常量时只保留会执行的分支
+        if (condition instanceof Expr.Literal) {
+            if (Interpreter.isTruthy(((Expr.Literal) condition).value))
+                return optimize(stmt.thenBranch);
+            return stmt.elseBranch != null ? optimize(stmt.elseBranch) : null;
+        }
+        Stmt thenBranch = optimizeBranch(stmt.thenBranch);
+        Stmt elseBranch = stmt.elseBranch != null ? optimize(stmt.elseBranch) : null;
+        return new Stmt.If(condition, thenBranch, elseBranch);
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        Expr condition = optimize(stmt.condition);
+        // 条件为假的循环一次也不会执行
+        if (condition instanceof Expr.Literal && !Interpreter.isTruthy(((Expr.Literal) condition).value))
+            return null;
+        return new Stmt.While(condition, optimizeBranch(stmt.body));
+    }
+
+    @Override
+    public Stmt visitForStmt(Stmt.For stmt) {
+        scopes.push(new HashMap<>());
+        Stmt initializer = stmt.initializer != null ? optimize(stmt.initializer) : null;
+        Expr condition = optimize(stmt.condition);
+        Stmt body = optimizeBranch(stmt.body);
+        Expr increment = stmt.increment != null ? optimize(stmt.increment) : null;
+        scopes.pop();
+        // 条件为假的循环只执行初始化语句
+        if (condition instanceof Expr.Literal && !Interpreter.isTruthy(((Expr.Literal) condition).value)) {
+            if (initializer == null)
+                return null;
+            List<Stmt> statements = new ArrayList<>();
+            statements.add(initializer);
+            return new Stmt.Block(statements);
+        }
+        return new Stmt.For(initializer, condition, increment, body);
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        Expr expression = optimize(stmt.expression);
+        return expression == stmt.expression ? stmt : new Stmt.Print(expression);
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        Expr initializer = stmt.initializer != null ? optimize(stmt.initializer) : null;
+        // 从未被重新赋值且初始值为常量的局部变量是常量，没有初始化式的变量值为 nil
+        Expr.Literal constant = null;
+        if (!stmt.assigned) {
+            if (initializer == null)
+                constant = new Expr.Literal(null);
+            else if (initializer instanceof Expr.Literal)
+                constant = (Expr.Literal) initializer;
+        }
+        declare(stmt.name, constant);
+        if (initializer == stmt.initializer)
+            return stmt;
+        // 内联时会再化简一遍，保留语义分析的结果
+        Stmt.Var var = new Stmt.Var(stmt.name, initializer);
+        var.assigned = stmt.assigned;
+        return var;
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        Expr value = optimize(expr.value);
+        return value == expr.value ? expr : new Expr.Assign(expr.name, value);
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        if (left instanceof Expr.Literal && right instanceof Expr.Literal) {
+            Object folded = fold(expr.operator, ((Expr.Literal) left).value, ((Expr.Literal) right).value);
+            if (folded != NOT_CONSTANT)
+                return new Expr.Literal(folded);
+        }
+        if (left == expr.left && right == expr.right)
+            return expr;
+        return new Expr.Binary(left, expr.operator, right);
+    }
+
+    // 无法在编译期求值的运算，保留给运行时报告错误
+    private static final Object NOT_CONSTANT = new Object();
+
+    private static Object fold(Token operator, Object left, Object right) {
+        switch (operator.type) {
+            case BANG_EQUAL:
+                return !Interpreter.isEqual(left, right);
+            case EQUAL_EQUAL:
+                return Interpreter.isEqual(left, right);
+            case PLUS:
+                if (left instanceof String && right instanceof String)
+                    return (String) left + (String) right;
+                break;
+            default:
+                break;
+        }
+        if (!(left instanceof Double && right instanceof Double))
+            return NOT_CONSTANT;
+        double a = (double) left;
+        double b = (double) right;
+        switch (operator.type) {
+            case PLUS:
+                return a + b;
+            case MINUS:
+                return a - b;
+            case SLASH:
+                return a / b;
+            case STAR:
+                return a * b;
+            case GREATER:
+                return a > b;
+            case GREATER_EQUAL:
+                return a >= b;
+            case LESS:
+                return a < b;
+            case LESS_EQUAL:
+                return a <= b;
+            default:
+                return NOT_CONSTANT;
+        }
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        return call(expr, true);
+    }
+
+    private Expr call(Expr.Call expr, boolean inline) {
+        Expr.Call call = new Expr.Call(optimize(expr.callee), expr.paren, optimizeAll(expr.arguments));
+        // 调用的是全局函数且实参数量正确时内联，数量错误的调用留给运行时报告
+        if (inline && call.callee instanceof Expr.Variable) {
+            Token name = ((Expr.Variable) call.callee).name;
+            Stmt.Function function = inlinable.get(name.lexeme);
+            if (function != null && !isLocal(name) && function.params.size() == call.arguments.size()) {
+                Expr body = ((Stmt.Return) function.body.get(0)).value;
+                return new Expr.Inline(call, function.name, function.params, body);
+            }
+        }
+        return call;
+    }
+
+    @Override
+    public Expr visitInlineExpr(Expr.Inline expr) {
+        return expr;
+    }
+
+    // 顶层只声明一次、函数体只有一条 return 语句且不调用自身的小函数可以内联
+    private static Map<String, Stmt.Function> findInlinable(List<Stmt> statements) {
+        Map<String, Stmt.Function> functions = new HashMap<>();
+        Map<String, Integer> declarations = new HashMap<>();
+        for (Stmt stmt : statements) {
+            Token name = null;
+            if (stmt instanceof Stmt.Function)
+                name = ((Stmt.Function) stmt).name;
+            else if (stmt instanceof Stmt.Var)
+                name = ((Stmt.Var) stmt).name;
+            else if (stmt instanceof Stmt.Class)
+                name = ((Stmt.Class) stmt).name;
+            if (name == null)
+                continue;
+            declarations.merge(name.lexeme, 1, Integer::sum);
+            if (stmt instanceof Stmt.Function && isSmall((Stmt.Function) stmt))
+                functions.put(name.lexeme, (Stmt.Function) stmt);
+        }
+        functions.keySet().removeIf(name -> declarations.get(name) > 1);
+        return functions;
+    }
+
+    private static boolean isSmall(Stmt.Function function) {
+        if (function.body.size() != 1 || !(function.body.get(0) instanceof Stmt.Return))
+            return false;
+        Expr value = ((Stmt.Return) function.body.get(0)).value;
+        return value != null && size(value, function.name.lexeme) <= MAX_INLINE_SIZE;
+    }
+
+    // 表达式的节点数，调用函数 self 自身时视为无穷大
+    private static int size(Expr expr, String self) {
+        if (expr instanceof Expr.Binary)
+            return 1 + size(((Expr.Binary) expr).left, self) + size(((Expr.Binary) expr).right, self);
+        if (expr instanceof Expr.Logical)
+            return 1 + size(((Expr.Logical) expr).left, self) + size(((Expr.Logical) expr).right, self);
+        if (expr instanceof Expr.Unary)
+            return 1 + size(((Expr.Unary) expr).right, self);
+        if (expr instanceof Expr.Assign)
+            return 1 + size(((Expr.Assign) expr).value, self);
+        if (expr instanceof Expr.Get)
+            return 1 + size(((Expr.Get) expr).object, self);
+        if (expr instanceof Expr.Set)
+            return 1 + size(((Expr.Set) expr).object, self) + size(((Expr.Set) expr).value, self);
+        if (expr instanceof Expr.Call) {
+            Expr.Call call = (Expr.Call) expr;
+            if (call.callee instanceof Expr.Variable && ((Expr.Variable) call.callee).name.lexeme.equals(self))
+                return Integer.MAX_VALUE;
+            int size = 1 + size(call.callee, self);
+            for (Expr argument : call.arguments) {
+                size += size(argument, self);
+                if (size < 0 || size > MAX_INLINE_SIZE)
+                    return Integer.MAX_VALUE;
+            }
+            return size;
+        }
+        return 1;
+    }
+
+    @Override
+    public Expr visitGetExpr(Expr.Get expr) {
+        Expr object = optimize(expr.object);
+        return object == expr.object ? expr : new Expr.Get(object, expr.name);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        // 分组只影响语法分析时的优先级，执行时不再需要
+        return optimize(expr.expression);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        // 左侧为常量时短路的结果已经确定
+        if (left instanceof Expr.Literal) {
+            boolean truthy = Interpreter.isTruthy(((Expr.Literal) left).value);
+            if (expr.operator.type == TokenType.OR)
+                return truthy ? left : right;
+            return truthy ? right : left;
+        }
+        if (left == expr.left && right == expr.right)
+            return expr;
+        return new Expr.Logical(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitSetExpr(Expr.Set expr) {
+        Expr object = optimize(expr.object);
+        Expr value = optimize(expr.value);
+        if (object == expr.object && value == expr.value)
+            return expr;
+        return new Expr.Set(object, expr.name, value);
+    }
+
+    @Override
+    public Expr visitSuperExpr(Expr.Super expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitThisExpr(Expr.This expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = optimize(expr.right);
+        if (right instanceof Expr.Literal) {
+            Object value = ((Expr.Literal) right).value;
+            if (expr.operator.type == TokenType.BANG)
+                return new Expr.Literal(!Interpreter.isTruthy(value));
+            if (expr.operator.type == TokenType.MINUS && value instanceof Double)
+                return new Expr.Literal(-(double) value);
+        }
+        return right == expr.right ? expr : new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        Expr.Literal constant = constantOf(expr.name);
+        return constant != null ? constant : expr;
+    }
+}
@@ -69,7 +69,6 @@ package com.craftinginterpreters.jlox;
 
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Arrays;
 
 import static com.craftinginterpreters.jlox.TokenType.*;
 
@@ -251,7 +250,7 @@ class Parser {
          * 
          * // for 循环
          * for (var i = 0; i < 10; i = i + 1) print i;
-         * // 对应的等价 while 形式
+         * // 作用域与等价的 while 形式相同，初始化语句中的变量属于包围整个循环的块
          * {
          * var i = 0;
          * while (i < 10) {
@@ -259,24 +258,9 @@ class Parser {
          * i = i + 1;
          * }
          * }
+         * 保留 for 语句使解释器可以识别计数循环，其他执行引擎用 Desugar 展开为 while
          */
-
-        // 如果有递增表达式，则将其和循环体打包到一个 block 中
-        if (increment != null) {
-            body = new Stmt.Block(
-                    Arrays.asList(
-                            body, new Stmt.Expression(increment)));
-        }
-
-        // 加增量表达和循环体打包为 while 循环语句
-        body = new Stmt.While(condition, body);
-
-        // 有初始化语句则将初始化语句和 while 循环语句打包成 block
-        // 该 block 即 for 语句的 block
-        if (initializer != null)
-            body = new Stmt.Block(Arrays.asList(initializer, body));
-
-        return body;
+        return new Stmt.For(initializer, condition, increment, body);
     }
 
     private Stmt returnStatement() {
@@ -0,0 +1,108 @@
+package com.craftinginterpreters.jlox;
+
+/*
+ * 属性访问点（Expr.Get / Expr.Set）的内联缓存
+ *
+ * 以接收者的形状为键，记住上次查找的结果：
+ * 读取时是字段槽位或方法，写入时是字段槽位或添加字段后迁移到的形状。
+ * 形状由类的根形状派生而来，命中形状即同时确定了类与字段布局，无需再按名字查找。
+ * 一个访问点最多缓存 MAX_ENTRIES 个形状，超过后转为通用查找，不再更新缓存。
+ */
+final class PropertyCache {
+    private static final int MAX_ENTRIES = 4;
+
+    private final Shape[] shapes = new Shape[MAX_ENTRIES];
+    private final int[] slots = new int[MAX_ENTRIES];
+    // 读取：字段不存在时找到的方法
+    private final JLoxFunction[] methods = new JLoxFunction[MAX_ENTRIES];
+    // 写入：添加新字段后的形状，已有字段为 null
+    private final Shape[] transitions = new Shape[MAX_ENTRIES];
+    private int count = 0;
+    private boolean megamorphic = false;
+
+    Object get(JLoxInstance instance, Token name) {
+        int entry = lookup(instance, name);
+        if (entry < 0)
+            return instance.get(name);
+        if (methods[entry] != null)
+            return methods[entry].bind(instance);
+        return instance.values[slots[entry]];
+    }
+
+    /*
+     * 方法调用时查找属性
+     * 属性是方法时返回未绑定的方法，由调用者直接以实例作为 this 调用；
+     * 属性是字段时返回 null，由调用者通过 get 读取字段
+     */
+    JLoxFunction method(JLoxInstance instance, Token name) {
+        int entry = lookup(instance, name);
+        if (entry >= 0)
+            return methods[entry];
+
+        if (instance.shape.slotOf(name.lexeme) >= 0)
+            return null;
+        JLoxFunction method = instance.klass.findMethod(name.lexeme);
+        if (method == null)
+            throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+        return method;
+    }
+
+    // 返回命中或新加入的缓存项，未定义的属性及转为通用查找后返回 -1
+    private int lookup(JLoxInstance instance, Token name) {
+        Shape shape = instance.shape;
+        for (int i = 0; i < count; i++) {
+            if (shapes[i] == shape)
+                return i;
+        }
+        if (megamorphic)
+            return -1;
+
+        int slot = shape.slotOf(name.lexeme);
+        JLoxFunction method = null;
+        if (slot < 0) {
+            method = instance.klass.findMethod(name.lexeme);
+            // 未定义的属性不缓存，由通用查找报告错误
+            if (method == null)
+                return -1;
+        }
+        return add(shape, slot, method, null);
+    }
+
+    void set(JLoxInstance instance, Token name, Object value) {
+        Shape shape = instance.shape;
+        for (int i = 0; i < count; i++) {
+            if (shapes[i] == shape) {
+                if (transitions[i] != null)
+                    instance.addField(transitions[i], value);
+                else
+                    instance.values[slots[i]] = value;
+                return;
+            }
+        }
+        if (megamorphic) {
+            instance.set(name, value);
+            return;
+        }
+
+        int slot = shape.slotOf(name.lexeme);
+        Shape next = null;
+        if (slot < 0) {
+            next = shape.withField(name.lexeme);
+            slot = next.size - 1;
+        }
+        add(shape, slot, null, next);
+        instance.set(name, value);
+    }
+
+    private int add(Shape shape, int slot, JLoxFunction method, Shape transition) {
+        if (count == MAX_ENTRIES) {
+            megamorphic = true;
+            return -1;
+        }
+        shapes[count] = shape;
+        slots[count] = slot;
+        methods[count] = method;
+        transitions[count] = transition;
+        return count++;
+    }
+}
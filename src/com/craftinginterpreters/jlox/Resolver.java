@@ -1,5 +1,6 @@
 package com.craftinginterpreters.jlox;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -13,9 +14,91 @@ import java.util.Stack;
  */
 class Resolver implements Expr.Visitor<Void>,
         Stmt.Visitor<Void> {
-    private final Interpreter interpreter;
-    // 环境
-    private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+    // 当前所在的函数，顶层代码视为最外层的函数
+    private FunctionScope current = new FunctionScope(null);
+    // 变量的访问与声明，变量是否被捕获要到其所在函数分析完才能确定，
+    // 因此访问方式与槽位在 finish 中统一回填
+    private final List<Reference> references = new ArrayList<>();
+
+    /*
+     * 函数作用域
+     *
+     * 函数中所有块的局部变量都放在同一个定长帧中，块不再需要自己的环境，
+     * 块结束后它的槽位可以被之后的块复用。
+     * 闭包只捕获它实际引用的外层变量（自由变量），这些变量在帧中存放共享的 Cell。
+     */
+    private static class FunctionScope {
+        final FunctionScope enclosing;
+        // 函数内的块作用域
+        final Stack<Map<String, Local>> scopes = new Stack<>();
+        // 捕获列表，非负数为外层函数帧中存放 Cell 的槽位，负数 -1-i 为外层函数捕获的第 i 个 Cell
+        final List<Integer> captures = new ArrayList<>();
+        final Map<Local, Integer> captureIndexes = new HashMap<>();
+        // 下一个可用的槽位，以及帧的大小
+        int next = 0;
+        int frameSize = 0;
+
+        FunctionScope(FunctionScope enclosing) {
+            this.enclosing = enclosing;
+        }
+
+        Local lookup(String name) {
+            for (int i = scopes.size() - 1; i >= 0; i--) {
+                Local local = scopes.get(i).get(name);
+                if (local != null)
+                    return local;
+            }
+            return null;
+        }
+
+        // 内层函数捕获 local，返回它在本函数捕获列表中的下标
+        int capture(Local local) {
+            Integer index = captureIndexes.get(local);
+            if (index != null)
+                return index;
+            if (local.function == enclosing)
+                captures.add(local.slot);
+            else
+                captures.add(-1 - enclosing.capture(local));
+            index = captures.size() - 1;
+            captureIndexes.put(local, index);
+            return index;
+        }
+    }
+
+    // 局部变量的定义状态、槽位，以及是否被内层函数捕获
+    private static class Local {
+        final FunctionScope function;
+        final int slot;
+        boolean defined = false;
+        boolean captured = false;
+        // 以 var 声明的变量对应的语句，以及声明之后被赋值的次数
+        Stmt.Var declaration;
+        int assignments = 0;
+
+        Local(FunctionScope function, int slot) {
+            this.function = function;
+            this.slot = slot;
+        }
+    }
+
+    // 把变量的访问方式与槽位写回语法树节点
+    private interface Binder {
+        void bind(Storage storage, int slot);
+    }
+
+    // 对局部变量的一次访问或声明，upvalue 为访问处函数捕获列表的下标，在本函数中访问为 -1
+    private static class Reference {
+        final Local local;
+        final int upvalue;
+        final Binder binder;
+
+        Reference(Local local, int upvalue, Binder binder) {
+            this.local = local;
+            this.upvalue = upvalue;
+            this.binder = binder;
+        }
+    }
 
     private enum FunctionType {
         NONE,
@@ -35,15 +118,20 @@ class Resolver implements Expr.Visitor<Void>,
     }
 
     private ClassType currentClass = ClassType.NONE;
+    // 当前类的方法中出现的 super 表达式，类定义执行时一次查好它们的目标方法
+    private List<Expr.Super> currentSupers = null;
 
-    Resolver(Interpreter interpreter) {
-        this.interpreter = interpreter;
+    // 全局变量的 Cell 在解析时绑定到节点上
+    private final Environment globals;
+
+    Resolver(Environment globals) {
+        this.globals = globals;
     }
 
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
         beginScope();
-        resolve(stmt.statements);
+        resolveStatements(stmt.statements);
         endScope();
         return null;
     }
@@ -52,10 +140,15 @@ class Resolver implements Expr.Visitor<Void>,
     public Void visitClassStmt(Stmt.Class stmt) {
         // 进入闭包之前的 currentClass 的状态
         ClassType enclosingClass = currentClass;
+        List<Expr.Super> enclosingSupers = currentSupers;
 
         currentClass = ClassType.CLASS;
 
-        declare(stmt.name);
+        if (declare(stmt.name, (storage, slot) -> {
+            stmt.slot = slot;
+            stmt.captured = storage == Storage.CELL;
+        }) == null)
+            stmt.global = globals.cell(stmt.name.lexeme);
         define(stmt.name);
 
         if (stmt.superclass != null) {
@@ -64,30 +157,35 @@ class Resolver implements Expr.Visitor<Void>,
                 JLox.error(stmt.superclass.name, "A class can't inherit itself.");
             currentClass = ClassType.SUBCLASS;
             resolve(stmt.superclass);
-            // 为超类启用闭包，多次继承时使 super 能指向正确的类
-            // 在解释运行 super 时， this 和 super 的 distance 获取被硬编码，顺序不能调换
+            // super 是外层函数中的隐藏局部变量，方法通过捕获访问它，多次继承时使 super 能指向正确的类
             beginScope();
-            scopes.peek().put("super", true);
+            Local local = defineKeyword("super");
+            local.captured = true;
+            stmt.superSlot = local.slot;
+            stmt.supers = new ArrayList<>();
+            currentSupers = stmt.supers;
         }
-        beginScope();
-        scopes.peek().put("this", true);
         for (Stmt.Function method : stmt.methods) {
             FunctionType declaration = FunctionType.METHOD;
             if (method.name.lexeme.equals("init"))
                 declaration = FunctionType.INITIALIZER;
             resolveFunction(method, declaration);
         }
-        endScope();
         if (stmt.superclass != null)
             endScope();
         // 恢复环境
         currentClass = enclosingClass;
+        currentSupers = enclosingSupers;
         return null;
     }
 
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt) {
-        declare(stmt.name);
+        if (declare(stmt.name, (storage, slot) -> {
+            stmt.slot = slot;
+            stmt.captured = storage == Storage.CELL;
+        }) == null)
+            stmt.global = globals.cell(stmt.name.lexeme);
         define(stmt.name);
 
         resolveFunction(stmt, FunctionType.FUNCTION);
@@ -99,14 +197,25 @@ class Resolver implements Expr.Visitor<Void>,
         FunctionType enclosingFunction = currentFunction;
         // 借助 jvm 的栈使得在函数嵌套情况下保存函数类型
         currentFunction = functionType;
+        current = new FunctionScope(current);
         beginScope();
+        // this 与形参依次占据帧的前几个槽位，方法的 this 位于 0 号槽位，调用时直接传入
+        List<Local> params = new ArrayList<>();
+        if (functionType == FunctionType.METHOD || functionType == FunctionType.INITIALIZER)
+            params.add(defineKeyword("this"));
         for (Token param : function.params) {
-            declare(param);
+            params.add(declare(param, null));
             define(param);
         }
-        resolve(function.body);
+        resolveStatements(function.body);
         endScope();
 
+        // 形参与函数体中的局部变量共用一个帧，被捕获的形参在调用时放入 Cell
+        function.frameSize = current.frameSize;
+        function.captures = current.captures.stream().mapToInt(Integer::intValue).toArray();
+        function.cellSlots = params.stream().filter(local -> local.captured)
+                .mapToInt(local -> local.slot).toArray();
+        current = current.enclosing;
         currentFunction = enclosingFunction;
     }
 
@@ -131,6 +240,9 @@ class Resolver implements Expr.Visitor<Void>,
             if (currentFunction == FunctionType.INITIALIZER)
                 JLox.error(stmt.keyword, "Can't return a value from an initializer.");
             resolve(stmt.value);
+            // return f(...) 中的调用处于尾位置，调用完成后当前函数不再做任何事
+            if (stmt.value instanceof Expr.Call)
+                stmt.tailCall = true;
         }
         return null;
     }
@@ -142,6 +254,73 @@ class Resolver implements Expr.Visitor<Void>,
         return null;
     }
 
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        // 初始化语句中的变量属于包围整个循环的作用域，解析顺序与展开后的 while 形式一致
+        beginScope();
+        if (stmt.initializer != null)
+            resolve(stmt.initializer);
+        resolve(stmt.condition);
+        resolve(stmt.body);
+        if (stmt.increment != null)
+            resolve(stmt.increment);
+        countLoop(stmt);
+        endScope();
+        return null;
+    }
+
+    /*
+     * 识别计数循环 for (var i = 初值; i 比较运算 上界; i = i ± 常量) 循环体
+     * 要求循环变量只被递增表达式赋值且没有被闭包捕获，此时只有递增表达式能改变它，
+     * 初值为数字时它在整个循环中都是数字，解释器可以用 double 维护它。
+     * 初值是否为数字在进入循环时检查。
+     */
+    private void countLoop(Stmt.For stmt) {
+        if (!(stmt.initializer instanceof Stmt.Var))
+            return;
+        Token name = ((Stmt.Var) stmt.initializer).name;
+        Local local = current.scopes.peek().get(name.lexeme);
+        if (local == null || local.captured || local.assignments != 1)
+            return;
+
+        if (!(stmt.condition instanceof Expr.Binary))
+            return;
+        Expr.Binary condition = (Expr.Binary) stmt.condition;
+        switch (condition.operator.type) {
+            case LESS:
+            case LESS_EQUAL:
+            case GREATER:
+            case GREATER_EQUAL:
+                break;
+            default:
+                return;
+        }
+        if (!isVariable(condition.left, name))
+            return;
+
+        if (!(stmt.increment instanceof Expr.Assign))
+            return;
+        Expr.Assign increment = (Expr.Assign) stmt.increment;
+        if (!increment.name.lexeme.equals(name.lexeme) || !(increment.value instanceof Expr.Binary))
+            return;
+        Expr.Binary step = (Expr.Binary) increment.value;
+        if (!isVariable(step.left, name) || !(step.right instanceof Expr.Literal)
+                || !(((Expr.Literal) step.right).value instanceof Double))
+            return;
+        double value = (double) ((Expr.Literal) step.right).value;
+        if (step.operator.type == TokenType.PLUS)
+            stmt.step = value;
+        else if (step.operator.type == TokenType.MINUS)
+            stmt.step = -value;
+        else
+            return;
+        stmt.counted = true;
+    }
+
+    private static boolean isVariable(Expr expr, Token name) {
+        return expr instanceof Expr.Variable && ((Expr.Variable) expr).name.lexeme.equals(name.lexeme);
+    }
+
     @Override
     public Void visitIfStmt(Stmt.If stmt) {
         resolve(stmt.condition);
@@ -156,32 +335,64 @@ class Resolver implements Expr.Visitor<Void>,
         // 解析右侧表达式
         resolve((expr.value));
         // 解析待赋值的变量
-        resolveLocal(expr, expr.name);
+        Local local = resolveLocal(expr.name.lexeme, (storage, slot) -> {
+            expr.storage = storage;
+            expr.slot = slot;
+        });
+        if (local == null)
+            expr.global = globals.cell(expr.name.lexeme);
+        // 记录被重新赋值过的局部变量，供优化器判断变量是否是常量
+        else if (local.declaration != null) {
+            local.declaration.assigned = true;
+            local.assignments++;
+        }
         return null;
     }
 
     @Override
     public Void visitVariableExpr(Expr.Variable expr) {
+        Stack<Map<String, Local>> scopes = current.scopes;
         if (!scopes.isEmpty() &&
-                scopes.peek().get(expr.name.lexeme) == Boolean.FALSE)
+                scopes.peek().containsKey(expr.name.lexeme) &&
+                !scopes.peek().get(expr.name.lexeme).defined)
             JLox.error(expr.name, "Can't read local variable in its own initializer.");
-        resolveLocal(expr, expr.name);
+        if (resolveLocal(expr.name.lexeme, (storage, slot) -> {
+            expr.storage = storage;
+            expr.slot = slot;
+        }) == null)
+            expr.global = globals.cell(expr.name.lexeme);
         return null;
     }
 
-    private void resolveLocal(Expr expr, Token name) {
-        for (int i = scopes.size() - 1; i >= 0; i--) {
-            if (scopes.get(i).containsKey(name.lexeme)) {
-                interpreter.resolve(expr, scopes.size() - 1 - i);
-                return;
+    // 由内向外查找局部变量，找不到的是全局变量，节点保持 Storage.GLOBAL 并返回 null，由调用者绑定全局 Cell
+    private Local resolveLocal(String name, Binder binder) {
+        for (FunctionScope function = current; function != null; function = function.enclosing) {
+            Local local = function.lookup(name);
+            if (local == null)
+                continue;
+            if (function == current) {
+                references.add(new Reference(local, -1, binder));
+            } else {
+                // 外层函数的变量，沿途每个函数都捕获它的 Cell
+                local.captured = true;
+                references.add(new Reference(local, current.capture(local), binder));
             }
+            return local;
         }
+        return null;
     }
 
     @Override
     public Void visitVarStmt(Stmt.Var stmt) {
         // 变量的声明和定义被分为两步
-        declare(stmt.name);
+        Local local = declare(stmt.name, (storage, slot) -> {
+            stmt.slot = slot;
+            stmt.captured = storage == Storage.CELL;
+        });
+        if (local != null)
+            local.declaration = stmt;
+        else
+            stmt.global = globals.cell(stmt.name.lexeme);
         if (stmt.initializer != null) {
             resolve(stmt.initializer);
         }
@@ -205,6 +416,27 @@ class Resolver implements Expr.Visitor<Void>,
         return null;
     }
 
+    @Override
+    public Void visitInlineExpr(Expr.Inline expr) {
+        resolve(expr.call);
+        // 内联的函数体与函数声明共用节点，按函数自身的布局分析：形参依次位于新帧的槽位中，
+        // 其余变量都是全局变量，结果与分析函数声明时一致
+        FunctionScope enclosing = current;
+        FunctionType enclosingFunction = currentFunction;
+        current = new FunctionScope(null);
+        currentFunction = FunctionType.FUNCTION;
+        beginScope();
+        for (Token param : expr.params) {
+            declare(param, null);
+            define(param);
+        }
+        resolve(expr.body);
+        endScope();
+        current = enclosing;
+        currentFunction = enclosingFunction;
+        return null;
+    }
+
     @Override
     public Void visitGetExpr(Expr.Get expr) {
         resolve(expr.object);
@@ -244,8 +476,20 @@ class Resolver implements Expr.Visitor<Void>,
         }else if(currentClass != ClassType.SUBCLASS)
         {
             JLox.error(expr.keyword, "Can't use 'super' in a class with no superclass.");
+        }else
+        {
+            expr.index = currentSupers.size();
+            currentSupers.add(expr);
         }
-        resolveLocal(expr, expr.keyword);
+        // super 表达式同时访问 super 与方法的 this
+        resolveLocal("super", (storage, slot) -> {
+            expr.storage = storage;
+            expr.slot = slot;
+        });
+        resolveLocal("this", (storage, slot) -> {
+            expr.thisStorage = storage;
+            expr.thisSlot = slot;
+        });
         return null;
     }
 
@@ -255,7 +499,10 @@ class Resolver implements Expr.Visitor<Void>,
             JLox.error(expr.keyword, "Can't use 'this' outside of a class.");
             return null;
         }
-        resolveLocal(expr, expr.keyword);
+        resolveLocal("this", (storage, slot) -> {
+            expr.storage = storage;
+            expr.slot = slot;
+        });
         return null;
     }
 
@@ -265,11 +512,12 @@ class Resolver implements Expr.Visitor<Void>,
         return null;
     }
 
-    // 变量声明
-    void declare(Token name) {
+    // 变量声明，binder 回填声明语句中的槽位，形参为 null
+    private Local declare(Token name, Binder binder) {
+        Stack<Map<String, Local>> scopes = current.scopes;
         if (scopes.isEmpty())
-            return;
-        Map<String, Boolean> scope = scopes.peek();
+            return null;
+        Map<String, Local> scope = scopes.peek();
         //
         /*
          * 同一作用域内禁止重复定义同名变量
@@ -281,18 +529,45 @@ class Resolver implements Expr.Visitor<Void>,
          */
         if (scope.containsKey(name.lexeme))
             JLox.error(name, "Already variable with this name in this scope.");
-        scope.put(name.lexeme, false);
+        Local local = allocate();
+        scope.put(name.lexeme, local);
+        if (binder != null)
+            references.add(new Reference(local, -1, binder));
+        return local;
     }
 
     // 变量定义
-    void define(Token name) {
+    private void define(Token name) {
+        Stack<Map<String, Local>> scopes = current.scopes;
         if (scopes.isEmpty())
             return;
-        scopes.peek().put(name.lexeme, true);
+        scopes.peek().get(name.lexeme).defined = true;
+    }
+
+    // this 与 super 由解释器隐式定义
+    private Local defineKeyword(String keyword) {
+        Local local = allocate();
+        local.defined = true;
+        current.scopes.peek().put(keyword, local);
+        return local;
+    }
+
+    // 在当前函数的帧中分配一个槽位
+    private Local allocate() {
+        Local local = new Local(current, current.next++);
+        current.frameSize = Math.max(current.frameSize, current.next);
+        return local;
+    }
+
+    // 分析整个程序，返回顶层代码所需帧的大小
+    int resolve(List<Stmt> statements) {
+        resolveStatements(statements);
+        finish();
+        return current.frameSize;
     }
 
     // 分析多条语句
-    void resolve(List<Stmt> statements) {
+    private void resolveStatements(List<Stmt> statements) {
         for (Stmt stmt : statements) {
             resolve(stmt);
         }
@@ -308,13 +583,30 @@ class Resolver implements Expr.Visitor<Void>,
         expr.accept(this);
     }
 
-    // 添加一个环境
+    // 添加一个块作用域
     private void beginScope() {
-        scopes.push(new HashMap<String, Boolean>());
+        current.scopes.push(new HashMap<String, Local>());
     }
 
-    // 移除一个环境
+    // 移除一个块作用域，其中变量的槽位可以被之后的块复用
     private void endScope() {
-        scopes.pop();
+        current.next -= current.scopes.pop().size();
+    }
+
+    /*
+     * 所有变量是否被捕获都已确定，回填各节点的访问方式与槽位：
+     * 在本函数中访问未被捕获的变量直接读写槽位，被捕获的变量通过槽位中的 Cell 读写，
+     * 在内层函数中则通过闭包捕获的 Cell 读写。
+     */
+    private void finish() {
+        for (Reference reference : references) {
+            if (reference.upvalue >= 0)
+                reference.binder.bind(Storage.UPVALUE, reference.upvalue);
+            else if (reference.local.captured)
+                reference.binder.bind(Storage.CELL, reference.local.slot);
+            else
+                reference.binder.bind(Storage.LOCAL, reference.local.slot);
+        }
+        references.clear();
     }
-}
\ No newline at end of file
+}
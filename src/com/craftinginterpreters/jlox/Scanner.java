@@ -186,7 +186,12 @@ class Scanner {
         if (type == null)
             type = IDENTIFIER;
 
-        addToken(type);
+        /*
+         * 标识符驻留为符号：同名的标识符共享同一个 String 对象，其哈希值只计算一次，
+         * 运行时的方法表、字段形状和全局变量表以对象身份作为键，比较名字只需比较引用。
+         * 驻留使用 JVM 的字符串池，与 Java 代码中的 "init" 等字面量也是同一个对象。
+         */
+        tokens.add(new Token(type, text.intern(), null, line));
     }
 
     private boolean isAlpha(char c) {
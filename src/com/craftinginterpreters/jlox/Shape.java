@@ -0,0 +1,48 @@
+package com.craftinginterpreters.jlox;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/*
+ * 实例的隐藏类（形状）
+ *
+ * 字段添加顺序相同的实例共享同一个形状，形状记录字段名到槽位的映射，
+ * 实例自身只保存一个按槽位存放字段值的数组。
+ * 给实例添加新字段时沿转换边迁移到子形状，同一转换只创建一次。
+ * 每个类有自己的根形状，因此形状同时确定了实例所属的类。
+ */
+final class Shape {
+    // 字段名到槽位，包含祖先形状的所有字段；字段名是 Scanner 驻留的符号，按身份比较
+    private final Map<String, Integer> slots;
+    // 添加一个字段后迁移到的形状
+    private final Map<String, Shape> transitions = new IdentityHashMap<>();
+    // 字段数量
+    final int size;
+
+    // 类的根形状，没有字段
+    Shape() {
+        this.slots = new IdentityHashMap<>();
+        this.size = 0;
+    }
+
+    private Shape(Shape parent, String name) {
+        this.slots = new IdentityHashMap<>(parent.slots);
+        this.slots.put(name, parent.size);
+        this.size = parent.size + 1;
+    }
+
+    // 字段所在槽位，没有该字段时返回 -1
+    int slotOf(String name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    Shape withField(String name) {
+        Shape next = transitions.get(name);
+        if (next == null) {
+            next = new Shape(this, name);
+            transitions.put(name, next);
+        }
+        return next;
+    }
+}
@@ -0,0 +1,15 @@
+package com.craftinginterpreters.jlox;
+
+/*
+ * 变量在访问处的存放位置，由 Resolver 在语义分析时确定
+ */
+enum Storage {
+    // 全局变量，按名字保存在全局环境中
+    GLOBAL,
+    // 未被闭包捕获的局部变量，直接存放在当前帧的槽位中
+    LOCAL,
+    // 被闭包捕获的局部变量，当前帧的槽位中存放共享的 Cell
+    CELL,
+    // 外层函数的变量，位于当前函数捕获的 Cell 中
+    UPVALUE
+}
@@ -0,0 +1,13 @@
+package com.craftinginterpreters.jlox.closures;
+
+/*
+ * 编译后的语句
+ *
+ * run 正常执行完毕返回 null；执行了 return 语句则返回返回值，
+ * 返回值为 nil 时返回 RETURN_NIL，由外层语句逐层原样返回到函数调用处。
+ */
+interface Action {
+    Object RETURN_NIL = new Object();
+
+    Object run(Object[] frame);
+}
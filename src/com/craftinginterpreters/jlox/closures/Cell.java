@@ -0,0 +1,18 @@
+package com.craftinginterpreters.jlox.closures;
+
+/*
+ * 被闭包捕获的变量及全局变量的存储单元
+ *
+ * 未被捕获的局部变量直接存放在帧的槽位中；被捕获的变量在槽位中存放 Cell，
+ * 定义它的函数与捕获它的闭包共享同一个 Cell。
+ */
+final class Cell {
+    // 全局变量尚未定义时的取值，与 nil 区分
+    static final Object UNDEFINED = new Object();
+
+    Object value;
+
+    Cell(Object value) {
+        this.value = value;
+    }
+}
@@ -0,0 +1,707 @@
+package com.craftinginterpreters.jlox.closures;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.craftinginterpreters.jlox.Desugar;
+import com.craftinginterpreters.jlox.Expr;
+import com.craftinginterpreters.jlox.RuntimeError;
+import com.craftinginterpreters.jlox.Stmt;
+import com.craftinginterpreters.jlox.Token;
+import com.craftinginterpreters.jlox.TokenType;
+import com.craftinginterpreters.jlox.nodes.ScopeAnalyzer;
+
+/*
+ * 根据 ScopeAnalyzer 的结果把语法树编译为 lambda 树
+ *
+ * 访问者只在编译时使用：变量访问确定为帧槽位、Cell 或全局 Cell，
+ * 运算符确定为对应的 lambda，常见的形状（与数字常量运算、作为条件的比较）选用专门的 lambda。
+ * 求值顺序与错误信息与 Interpreter 相同。
+ */
+final class ClosureCompiler implements Expr.Visitor<Code>, Stmt.Visitor<Action> {
+    private final ScopeAnalyzer analyzer;
+    private final Map<String, Cell> globals;
+
+    ClosureCompiler(ScopeAnalyzer analyzer, Map<String, Cell> globals) {
+        this.analyzer = analyzer;
+        this.globals = globals;
+    }
+
+    // 顶层代码作为一个没有形参的函数
+    FunctionDefinition compileScript(List<Stmt> statements) {
+        FunctionDefinition script = new FunctionDefinition("script", analyzer.script.frameSize, false,
+                -1, false, new int[0], new boolean[0], new int[0]);
+        script.body = sequence(statements);
+        return script;
+    }
+
+    private Code compile(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private Action compile(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private Code[] compile(List<Expr> exprs) {
+        Code[] codes = new Code[exprs.size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = compile(exprs.get(i));
+        }
+        return codes;
+    }
+
+    // 依次执行语句，遇到 return 时把返回值传给外层
+    private Action sequence(List<Stmt> statements) {
+        Action[] actions = new Action[statements.size()];
+        for (int i = 0; i < actions.length; i++) {
+            actions[i] = compile(statements.get(i));
+        }
+        switch (actions.length) {
+            case 0:
+                return frame -> null;
+            case 1:
+                return actions[0];
+            case 2: {
+                Action first = actions[0];
+                Action second = actions[1];
+                return frame -> {
+                    Object result = first.run(frame);
+                    if (result != null)
+                        return result;
+                    return second.run(frame);
+                };
+            }
+            default:
+                return frame -> {
+                    for (Action action : actions) {
+                        Object result = action.run(frame);
+                        if (result != null)
+                            return result;
+                    }
+                    return null;
+                };
+        }
+    }
+
+    private Cell globalCell(String name) {
+        return globals.computeIfAbsent(name, key -> new Cell(Cell.UNDEFINED));
+    }
+
+    /*
+     * 定义变量
+     * 被捕获的局部变量每次执行都创建新的 Cell，循环体中的闭包各自捕获本次迭代的变量；
+     * Cell 在求值初始化式之前放入槽位，递归的局部函数能捕获到它自己
+     */
+    private Action define(Token name, Code value) {
+        ScopeAnalyzer.Variable variable = analyzer.declarations.get(name);
+        if (variable == null) {
+            Cell cell = globalCell(name.lexeme);
+            if (value == null)
+                return frame -> {
+                    cell.value = null;
+                    return null;
+                };
+            return frame -> {
+                cell.value = value.run(frame);
+                return null;
+            };
+        }
+
+        int slot = variable.slot;
+        if (variable.captured)
+            return frame -> {
+                Cell cell = new Cell(null);
+                frame[slot] = cell;
+                if (value != null)
+                    cell.value = value.run(frame);
+                return null;
+            };
+        if (value == null)
+            return frame -> {
+                frame[slot] = null;
+                return null;
+            };
+        return frame -> {
+            frame[slot] = value.run(frame);
+            return null;
+        };
+    }
+
+    private Code read(Expr expr, Token name) {
+        return read(analyzer.accesses.get(expr), name);
+    }
+
+    private Code read(ScopeAnalyzer.Access access, Token name) {
+        if (access == null) {
+            Cell cell = globalCell(name.lexeme);
+            return frame -> {
+                Object value = cell.value;
+                if (value == Cell.UNDEFINED)
+                    throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+                return value;
+            };
+        }
+        int slot = access.slot;
+        if (access.variable.captured)
+            return frame -> ((Cell) frame[slot]).value;
+        return frame -> frame[slot];
+    }
+
+    private FunctionDefinition function(Stmt.Function stmt, boolean isInitializer) {
+        ScopeAnalyzer.FunctionScope scope = analyzer.functions.get(stmt);
+
+        int thisSlot = -1;
+        boolean thisCaptured = false;
+        if (scope.thisVariable != null) {
+            thisSlot = scope.thisVariable.slot;
+            thisCaptured = scope.thisVariable.captured;
+        }
+
+        int[] paramSlots = new int[stmt.params.size()];
+        boolean[] paramCaptured = new boolean[paramSlots.length];
+        for (int i = 0; i < paramSlots.length; i++) {
+            ScopeAnalyzer.Variable param = analyzer.declarations.get(stmt.params.get(i));
+            paramSlots[i] = param.slot;
+            paramCaptured[i] = param.captured;
+        }
+
+        int[] captureSlots = new int[scope.captures.size()];
+        int i = 0;
+        for (ScopeAnalyzer.Capture capture : scope.captures.values()) {
+            captureSlots[i++] = capture.slot;
+        }
+
+        FunctionDefinition definition = new FunctionDefinition(stmt.name.lexeme, scope.frameSize, isInitializer,
+                thisSlot, thisCaptured, paramSlots, paramCaptured, captureSlots);
+        definition.body = sequence(stmt.body);
+        return definition;
+    }
+
+    // 创建闭包时从外层帧中取 Cell 的槽位
+    private int[] enclosingSlots(Stmt.Function stmt) {
+        ScopeAnalyzer.FunctionScope scope = analyzer.functions.get(stmt);
+        int[] slots = new int[scope.captures.size()];
+        int i = 0;
+        for (ScopeAnalyzer.Capture capture : scope.captures.values()) {
+            slots[i++] = capture.enclosingSlot;
+        }
+        return slots;
+    }
+
+    private static Cell[] captureCells(int[] captureSlots, Object[] frame) {
+        Cell[] cells = new Cell[captureSlots.length];
+        for (int i = 0; i < captureSlots.length; i++) {
+            cells[i] = (Cell) frame[captureSlots[i]];
+        }
+        return cells;
+    }
+
+    @Override
+    public Action visitBlockStmt(Stmt.Block stmt) {
+        return sequence(stmt.statements);
+    }
+
+    /*
+     * 创建类
+     * 有超类时先把超类写入 super 变量的槽位，方法创建时才能捕获到它
+     */
+    @Override
+    public Action visitClassStmt(Stmt.Class stmt) {
+        String name = stmt.name.lexeme;
+        Code superclass = stmt.superclass == null ? null : compile(stmt.superclass);
+        Token superclassName = stmt.superclass == null ? null : stmt.superclass.name;
+        ScopeAnalyzer.Variable superVariable = analyzer.superVariables.get(stmt);
+
+        int count = stmt.methods.size();
+        String[] names = new String[count];
+        FunctionDefinition[] methods = new FunctionDefinition[count];
+        int[][] captureSlots = new int[count][];
+        for (int i = 0; i < count; i++) {
+            Stmt.Function method = stmt.methods.get(i);
+            names[i] = method.name.lexeme;
+            methods[i] = function(method, names[i].equals("init"));
+            captureSlots[i] = enclosingSlots(method);
+        }
+
+        return define(stmt.name, frame -> {
+            LoxClass parent = null;
+            if (superclass != null) {
+                Object value = superclass.run(frame);
+                if (!(value instanceof LoxClass))
+                    throw new RuntimeError(superclassName, "Superclass must be a class.");
+                parent = (LoxClass) value;
+                frame[superVariable.slot] = superVariable.captured ? new Cell(parent) : parent;
+            }
+
+            Map<String, LoxFunction> table = new IdentityHashMap<>();
+            for (int i = 0; i < count; i++) {
+                table.put(names[i], new LoxFunction(methods[i], captureCells(captureSlots[i], frame), null));
+            }
+            return new LoxClass(name, parent, table);
+        });
+    }
+
+    @Override
+    public Action visitExpressionStmt(Stmt.Expression stmt) {
+        Code expression = compile(stmt.expression);
+        return frame -> {
+            expression.run(frame);
+            return null;
+        };
+    }
+
+    @Override
+    public Action visitFunctionStmt(Stmt.Function stmt) {
+        FunctionDefinition definition = function(stmt, false);
+        int[] captureSlots = enclosingSlots(stmt);
+        return define(stmt.name, frame -> new LoxFunction(definition, captureCells(captureSlots, frame), null));
+    }
+
+    @Override
+    public Action visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value == null)
+            return frame -> Action.RETURN_NIL;
+        Code value = compile(stmt.value);
+        return frame -> {
+            Object result = value.run(frame);
+            return result == null ? Action.RETURN_NIL : result;
+        };
+    }
+
+    @Override
+    public Action visitIfStmt(Stmt.If stmt) {
+        Condition condition = condition(stmt.condition);
+        Action thenBranch = compile(stmt.thenBranch);
+        if (stmt.elseBranch == null)
+            return frame -> condition.test(frame) ? thenBranch.run(frame) : null;
+        Action elseBranch = compile(stmt.elseBranch);
+        return frame -> condition.test(frame) ? thenBranch.run(frame) : elseBranch.run(frame);
+    }
+
+    // for 语句展开为 while 后编译
+    @Override
+    public Action visitForStmt(Stmt.For stmt) {
+        return Desugar.forLoop(stmt).accept(this);
+    }
+
+    @Override
+    public Action visitWhileStmt(Stmt.While stmt) {
+        Condition condition = condition(stmt.condition);
+        Action body = compile(stmt.body);
+        return frame -> {
+            while (condition.test(frame)) {
+                Object result = body.run(frame);
+                if (result != null)
+                    return result;
+            }
+            return null;
+        };
+    }
+
+    @Override
+    public Action visitPrintStmt(Stmt.Print stmt) {
+        Code expression = compile(stmt.expression);
+        return frame -> {
+            System.out.println(stringify(expression.run(frame)));
+            return null;
+        };
+    }
+
+    @Override
+    public Action visitVarStmt(Stmt.Var stmt) {
+        return define(stmt.name, stmt.initializer == null ? null : compile(stmt.initializer));
+    }
+
+    @Override
+    public Code visitAssignExpr(Expr.Assign expr) {
+        ScopeAnalyzer.Access access = analyzer.accesses.get(expr);
+        Code value = compile(expr.value);
+        if (access == null) {
+            Cell cell = globalCell(expr.name.lexeme);
+            Token name = expr.name;
+            return frame -> {
+                Object result = value.run(frame);
+                if (cell.value == Cell.UNDEFINED)
+                    throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+                cell.value = result;
+                return result;
+            };
+        }
+        int slot = access.slot;
+        if (access.variable.captured)
+            return frame -> {
+                Object result = value.run(frame);
+                ((Cell) frame[slot]).value = result;
+                return result;
+            };
+        return frame -> {
+            Object result = value.run(frame);
+            frame[slot] = result;
+            return result;
+        };
+    }
+
+    /*
+     * 比较运算作为条件时直接返回 boolean
+     * 其他表达式按真实性判断
+     */
+    private Condition condition(Expr expr) {
+        if (expr instanceof Expr.Binary && isComparison(((Expr.Binary) expr).operator.type))
+            return comparison((Expr.Binary) expr);
+        Code code = compile(expr);
+        return frame -> isTruthy(code.run(frame));
+    }
+
+    private Condition comparison(Expr.Binary expr) {
+        Token operator = expr.operator;
+        Code left = compile(expr.left);
+        if (isNumber(expr.right)) {
+            double r = (double) ((Expr.Literal) expr.right).value;
+            switch (operator.type) {
+                case GREATER:
+                    return frame -> number(operator, left.run(frame)) > r;
+                case GREATER_EQUAL:
+                    return frame -> number(operator, left.run(frame)) >= r;
+                case LESS:
+                    return frame -> number(operator, left.run(frame)) < r;
+                default:
+                    return frame -> number(operator, left.run(frame)) <= r;
+            }
+        }
+
+        Code right = compile(expr.right);
+        switch (operator.type) {
+            case GREATER:
+                return frame -> {
+                    Object l = left.run(frame);
+                    Object r = right.run(frame);
+                    return number(operator, l) > number(operator, r);
+                };
+            case GREATER_EQUAL:
+                return frame -> {
+                    Object l = left.run(frame);
+                    Object r = right.run(frame);
+                    return number(operator, l) >= number(operator, r);
+                };
+            case LESS:
+                return frame -> {
+                    Object l = left.run(frame);
+                    Object r = right.run(frame);
+                    return number(operator, l) < number(operator, r);
+                };
+            default:
+                return frame -> {
+                    Object l = left.run(frame);
+                    Object r = right.run(frame);
+                    return number(operator, l) <= number(operator, r);
+                };
+        }
+    }
+
+    @Override
+    public Code visitBinaryExpr(Expr.Binary expr) {
+        Token operator = expr.operator;
+        if (isComparison(operator.type)) {
+            Condition comparison = comparison(expr);
+            return frame -> comparison.test(frame);
+        }
+
+        Code left = compile(expr.left);
+        // 右操作数为数字常量时不必再求值和检查它
+        if (isNumber(expr.right)) {
+            double r = (double) ((Expr.Literal) expr.right).value;
+            switch (operator.type) {
+                case PLUS:
+                    return frame -> {
+                        Object l = left.run(frame);
+                        if (l instanceof Double)
+                            return (double) l + r;
+                        throw new RuntimeError(operator, "Operands must be numbers or strings");
+                    };
+                case MINUS:
+                    return frame -> number(operator, left.run(frame)) - r;
+                case STAR:
+                    return frame -> number(operator, left.run(frame)) * r;
+                case SLASH:
+                    return frame -> number(operator, left.run(frame)) / r;
+                default:
+                    break;
+            }
+        }
+
+        Code right = compile(expr.right);
+        switch (operator.type) {
+            case PLUS:
+                return frame -> {
+                    Object l = left.run(frame);
+                    Object r = right.run(frame);
+                    if (l instanceof Double && r instanceof Double)
+                        return (double) l + (double) r;
+                    if (l instanceof String && r instanceof String)
+                        return (String) l + (String) r;
+                    throw new RuntimeError(operator, "Operands must be numbers or strings");
+                };
+            case MINUS:
+                return frame -> {
+                    Object l = left.run(frame);
+                    Object r = right.run(frame);
+                    return number(operator, l) - number(operator, r);
+                };
+            case STAR:
+                return frame -> {
+                    Object l = left.run(frame);
+                    Object r = right.run(frame);
+                    return number(operator, l) * number(operator, r);
+                };
+            case SLASH:
+                return frame -> {
+                    Object l = left.run(frame);
+                    Object r = right.run(frame);
+                    return number(operator, l) / number(operator, r);
+                };
+            case EQUAL_EQUAL:
+                return frame -> {
+                    Object l = left.run(frame);
+                    return isEqual(l, right.run(frame));
+                };
+            case BANG_EQUAL:
+                return frame -> {
+                    Object l = left.run(frame);
+                    return !isEqual(l, right.run(frame));
+                };
+            default:
+                throw new IllegalArgumentException("Unexpected binary operator " + operator.lexeme);
+        }
+    }
+
+    private static boolean isNumber(Expr expr) {
+        return expr instanceof Expr.Literal && ((Expr.Literal) expr).value instanceof Double;
+    }
+
+    private static boolean isComparison(TokenType type) {
+        return type == TokenType.LESS || type == TokenType.LESS_EQUAL
+                || type == TokenType.GREATER || type == TokenType.GREATER_EQUAL;
+    }
+
+    @Override
+    public Code visitCallExpr(Expr.Call expr) {
+        Code[] arguments = compile(expr.arguments);
+        Token paren = expr.paren;
+        if (expr.callee instanceof Expr.Get)
+            return invoke((Expr.Get) expr.callee, arguments, paren);
+        if (expr.callee instanceof Expr.Super) {
+            Expr.Super sup = (Expr.Super) expr.callee;
+            Code superclass = read(sup, sup.keyword);
+            Code receiver = read(analyzer.superReceivers.get(sup), sup.keyword);
+            Token method = sup.method;
+            return frame -> {
+                LoxFunction function = findSuperMethod((LoxClass) superclass.run(frame), method);
+                Object instance = receiver.run(frame);
+                Object[] values = run(arguments, frame);
+                checkArity(function.arity(), values.length, paren);
+                return function.invoke(instance, values);
+            };
+        }
+
+        Code callee = compile(expr.callee);
+        return frame -> {
+            Object function = callee.run(frame);
+            return call(function, run(arguments, frame), paren);
+        };
+    }
+
+    /*
+     * 方法调用 object.name(arguments)
+     * 求值顺序与先取属性再调用一致：对象、属性查找及其错误、实参，
+     * 但找到方法时直接以对象作为 this 调用，不创建绑定方法
+     */
+    private Code invoke(Expr.Get get, Code[] arguments, Token paren) {
+        Code object = compile(get.object);
+        Token name = get.name;
+        return frame -> {
+            Object receiver = object.run(frame);
+            if (!(receiver instanceof LoxInstance))
+                throw new RuntimeError(name, "Only instances have properties.");
+            LoxInstance instance = (LoxInstance) receiver;
+
+            // 字段会遮蔽同名方法
+            Object field = instance.fields.get(name.lexeme);
+            if (field != null || instance.fields.containsKey(name.lexeme))
+                return call(field, run(arguments, frame), paren);
+
+            LoxFunction method = instance.klass.findMethod(name.lexeme);
+            if (method == null)
+                throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+            Object[] values = run(arguments, frame);
+            checkArity(method.arity(), values.length, paren);
+            return method.invoke(instance, values);
+        };
+    }
+
+    // 依次对实参求值
+    private static Object[] run(Code[] arguments, Object[] frame) {
+        Object[] values = new Object[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            values[i] = arguments[i].run(frame);
+        }
+        return values;
+    }
+
+    // 调用任意可调用对象，检查类型与参数数量
+    private static Object call(Object callee, Object[] arguments, Token paren) {
+        if (!(callee instanceof LoxCallable))
+            throw new RuntimeError(paren, "Can only call functions and classes");
+        LoxCallable function = (LoxCallable) callee;
+        checkArity(function.arity(), arguments.length, paren);
+        return function.call(arguments);
+    }
+
+    private static void checkArity(int arity, int count, Token paren) {
+        if (count != arity)
+            throw new RuntimeError(paren, "Expected " + arity + " arguments but got " + count + ".");
+    }
+
+    private static LoxFunction findSuperMethod(LoxClass superclass, Token method) {
+        LoxFunction function = superclass.findMethod(method.lexeme);
+        if (function == null)
+            throw new RuntimeError(method, "Undefined property '" + method.lexeme + "'.");
+        return function;
+    }
+
+    // 内联调用按原来的调用执行
+    @Override
+    public Code visitInlineExpr(Expr.Inline expr) {
+        return visitCallExpr(expr.call);
+    }
+
+    @Override
+    public Code visitGetExpr(Expr.Get expr) {
+        Code object = compile(expr.object);
+        Token name = expr.name;
+        return frame -> {
+            Object receiver = object.run(frame);
+            if (!(receiver instanceof LoxInstance))
+                throw new RuntimeError(name, "Only instances have properties.");
+            LoxInstance instance = (LoxInstance) receiver;
+
+            Object field = instance.fields.get(name.lexeme);
+            if (field != null || instance.fields.containsKey(name.lexeme))
+                return field;
+            LoxFunction method = instance.klass.findMethod(name.lexeme);
+            if (method != null)
+                return method.bind(instance);
+            throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+        };
+    }
+
+    @Override
+    public Code visitSetExpr(Expr.Set expr) {
+        Code object = compile(expr.object);
+        Code value = compile(expr.value);
+        Token name = expr.name;
+        return frame -> {
+            Object receiver = object.run(frame);
+            if (!(receiver instanceof LoxInstance))
+                throw new RuntimeError(name, "Only instances have fields.");
+            Object result = value.run(frame);
+            ((LoxInstance) receiver).fields.put(name.lexeme, result);
+            return result;
+        };
+    }
+
+    @Override
+    public Code visitThisExpr(Expr.This expr) {
+        return read(expr, expr.keyword);
+    }
+
+    // super.method，分别读取 super 和 this 变量
+    @Override
+    public Code visitSuperExpr(Expr.Super expr) {
+        Code superclass = read(expr, expr.keyword);
+        Code receiver = read(analyzer.superReceivers.get(expr), expr.keyword);
+        Token method = expr.method;
+        return frame -> {
+            LoxFunction function = findSuperMethod((LoxClass) superclass.run(frame), method);
+            return function.bind((LoxInstance) receiver.run(frame));
+        };
+    }
+
+    @Override
+    public Code visitGroupingExpr(Expr.Grouping expr) {
+        return compile(expr.expression);
+    }
+
+    @Override
+    public Code visitLiteralExpr(Expr.Literal expr) {
+        Object value = expr.value;
+        return frame -> value;
+    }
+
+    // 逻辑运算符返回具有适当真实性的操作数本身
+    @Override
+    public Code visitLogicalExpr(Expr.Logical expr) {
+        Code left = compile(expr.left);
+        Code right = compile(expr.right);
+        if (expr.operator.type == TokenType.OR)
+            return frame -> {
+                Object value = left.run(frame);
+                return isTruthy(value) ? value : right.run(frame);
+            };
+        return frame -> {
+            Object value = left.run(frame);
+            return isTruthy(value) ? right.run(frame) : value;
+        };
+    }
+
+    @Override
+    public Code visitUnaryExpr(Expr.Unary expr) {
+        Code operand = compile(expr.right);
+        Token operator = expr.operator;
+        if (operator.type == TokenType.MINUS)
+            return frame -> -number(operator, operand.run(frame));
+        return frame -> !isTruthy(operand.run(frame));
+    }
+
+    @Override
+    public Code visitVariableExpr(Expr.Variable expr) {
+        return read(expr, expr.name);
+    }
+
+    private static double number(Token operator, Object value) {
+        if (value instanceof Double)
+            return (double) value;
+        throw new RuntimeError(operator, "Operand must be a number");
+    }
+
+    // false 和 nil 是假，其他都是真
+    private static boolean isTruthy(Object object) {
+        if (object == null)
+            return false;
+        if (object instanceof Boolean)
+            return (boolean) object;
+        return true;
+    }
+
+    private static boolean isEqual(Object a, Object b) {
+        if (a == null && b == null)
+            return true;
+        if (a == null)
+            return false;
+        return a.equals(b);
+    }
+
+    private static String stringify(Object object) {
+        if (object == null)
+            return "nil";
+
+        if (object instanceof Double) {
+            String text = object.toString();
+            if (text.endsWith(".0"))
+                text = text.substring(0, text.length() - 2);
+            return text;
+        }
+        return object.toString();
+    }
+}
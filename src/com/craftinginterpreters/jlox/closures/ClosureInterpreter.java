@@ -0,0 +1,34 @@
+package com.craftinginterpreters.jlox.closures;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.craftinginterpreters.jlox.JLox;
+import com.craftinginterpreters.jlox.RuntimeError;
+import com.craftinginterpreters.jlox.Stmt;
+import com.craftinginterpreters.jlox.nodes.ScopeAnalyzer;
+
+/*
+ * 闭包编译执行引擎
+ *
+ * 语法树先经 ScopeAnalyzer 分配槽位，再由 ClosureCompiler 把每个节点编译一次，
+ * 得到一棵预先链接好的 lambda 树：每个 lambda 持有子 lambda、槽位和按运算符选定的运算。
+ * 执行只是 lambda 之间的直接调用，不经过访问者的双重分派，也不判断运算符的类型；
+ * 与节点树引擎不同，编译结果在运行中不再改写。
+ */
+public class ClosureInterpreter {
+    // 全局变量在多次解释（如 REPL 逐行输入）之间保留
+    private final Map<String, Cell> globals = new IdentityHashMap<>();
+
+    public void interpret(List<Stmt> statements) {
+        ScopeAnalyzer analyzer = new ScopeAnalyzer();
+        analyzer.analyze(statements);
+        FunctionDefinition script = new ClosureCompiler(analyzer, globals).compileScript(statements);
+        try {
+            script.execute(new Object[script.frameSize]);
+        } catch (RuntimeError error) {
+            JLox.runtimeError(error);
+        }
+    }
+}
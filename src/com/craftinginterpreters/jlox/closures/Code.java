@@ -0,0 +1,10 @@
+package com.craftinginterpreters.jlox.closures;
+
+/*
+ * 编译后的表达式
+ *
+ * 每个表达式节点只在编译时访问一次，之后由持有子表达式和槽位的 lambda 直接求值。
+ */
+interface Code {
+    Object run(Object[] frame);
+}
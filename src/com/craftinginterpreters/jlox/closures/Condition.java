@@ -0,0 +1,9 @@
+package com.craftinginterpreters.jlox.closures;
+
+/*
+ * 编译后的条件表达式，直接给出真假
+ * 比较运算作为 if 和 while 的条件时不必先装箱为 Boolean 再判断真实性
+ */
+interface Condition {
+    boolean test(Object[] frame);
+}
@@ -0,0 +1,58 @@
+package com.craftinginterpreters.jlox.closures;
+
+/*
+ * 函数的静态部分，由同一声明创建的所有闭包共享
+ *
+ * 槽位的布局与节点树引擎相同，由 ScopeAnalyzer 分配：
+ * 方法的 0 号槽位是 this，其后依次是形参、捕获的外部变量和函数体中的局部变量。
+ */
+final class FunctionDefinition {
+    final String name;
+    final int arity;
+    final int frameSize;
+    final boolean isInitializer;
+
+    // this 所在槽位，非方法为 -1
+    final int thisSlot;
+    final boolean thisCaptured;
+    final int[] paramSlots;
+    final boolean[] paramCaptured;
+    // 捕获的 Cell 在本函数帧中的槽位，与 LoxFunction.cells 一一对应
+    final int[] captureSlots;
+
+    // 函数体在定义之后才编译，使递归引用的函数能先拿到定义
+    Action body;
+
+    FunctionDefinition(String name, int frameSize, boolean isInitializer,
+            int thisSlot, boolean thisCaptured,
+            int[] paramSlots, boolean[] paramCaptured, int[] captureSlots) {
+        this.name = name;
+        this.arity = paramSlots.length;
+        this.frameSize = frameSize;
+        this.isInitializer = isInitializer;
+        this.thisSlot = thisSlot;
+        this.thisCaptured = thisCaptured;
+        this.paramSlots = paramSlots;
+        this.paramCaptured = paramCaptured;
+        this.captureSlots = captureSlots;
+    }
+
+    Object[] newFrame(Cell[] cells, Object receiver, Object[] arguments) {
+        Object[] frame = new Object[frameSize];
+        for (int i = 0; i < captureSlots.length; i++) {
+            frame[captureSlots[i]] = cells[i];
+        }
+        if (thisSlot >= 0)
+            frame[thisSlot] = thisCaptured ? new Cell(receiver) : receiver;
+        for (int i = 0; i < paramSlots.length; i++) {
+            frame[paramSlots[i]] = paramCaptured[i] ? new Cell(arguments[i]) : arguments[i];
+        }
+        return frame;
+    }
+
+    // 执行函数体，返回 return 语句的值，没有执行 return 时返回 nil
+    Object execute(Object[] frame) {
+        Object result = body.run(frame);
+        return result == Action.RETURN_NIL ? null : result;
+    }
+}
@@ -0,0 +1,18 @@
+package com.craftinginterpreters.jlox.closures;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+final class LoxInstance {
+    final LoxClass klass;
+    final Map<String, Object> fields = new IdentityHashMap<>();
+
+    LoxInstance(LoxClass klass) {
+        this.klass = klass;
+    }
+
+    @Override
+    public String toString() {
+        return klass.name + " instance";
+    }
+}
@@ -0,0 +1,678 @@
+package com.craftinginterpreters.jlox.compiler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.craftinginterpreters.jlox.Desugar;
+import com.craftinginterpreters.jlox.Expr;
+import com.craftinginterpreters.jlox.Stmt;
+import com.craftinginterpreters.jlox.Token;
+import com.craftinginterpreters.jlox.TokenType;
+import com.craftinginterpreters.jlox.nodes.ScopeAnalyzer;
+
+/*
+ * 把语法树翻译为 Java 源码，再由 javac 编译为 JVM 字节码
+ *
+ * 整个程序是一个主类，顶层代码是它的 script 方法；
+ * 每个 Lox 函数（含方法）编译为一个 LoxFunction 子类，每个 Lox 类编译为一个 LoxClass 子类。
+ * 未被捕获的局部变量是 JVM 局部变量 v<槽位>，被捕获的变量是 Cell；
+ * 表达式的每个中间结果都存入临时变量 t<n>，保证求值顺序与解释器一致。
+ *
+ * JVM 限制一个方法的字节码不超过 64KB，生成的函数体或顶层代码超过 METHOD_LIMIT 个字符时改为分段生成：
+ * 顶层语句按 CHUNK_LIMIT 分成若干段，每段是一个静态方法 chunk<n>(receiver, frame)，原方法依次调用各段。
+ * 跨段使用的变量（进入函数时就有的变量与顶层声明的变量）以 Cell 的形式放在 frame 数组中，每段开始时取出；
+ * 某段执行了 return 时返回它的值，否则返回 LoxRuntime.FALL_THROUGH，接着执行下一段。
+ * 顶层的块展开后分段；循环体等其余语句中的块总在同一段中，块内的变量仍是 JVM 局部变量。
+ */
+final class JavaEmitter implements Expr.Visitor<String>, Stmt.Visitor<Void> {
+    private final ScopeAnalyzer analyzer;
+    private final String className;
+
+    // 数字与字符串字面量，程序启动时装箱一次
+    private final Map<Object, String> constants = new LinkedHashMap<>();
+    // 全局变量名到主类静态字段的映射
+    private final Map<String, String> globals = new LinkedHashMap<>();
+    private final StringBuilder classes = new StringBuilder();
+    private int classCount = 0;
+    // 已生成的函数类的创建表达式与类名，函数体改为分段重新生成时不重复生成内层的函数和类
+    private final Map<Stmt.Function, String> functions = new IdentityHashMap<>();
+    private final Map<Stmt.Class, String> classNames = new IdentityHashMap<>();
+
+    // 字节码约为源码字符数的 1/4 以下，留出足够余量
+    private static final int METHOD_LIMIT = 100000;
+    private static final int CHUNK_LIMIT = 50000;
+    private static final Pattern LOCAL = Pattern.compile("\\bv\\d+\\b");
+
+    // 正在生成的函数体
+    private static final class Body {
+        StringBuilder code = new StringBuilder();
+        final boolean isInitializer;
+        int indent;
+        int temps = 0;
+        // 块的嵌套深度，为 0 时声明的是顶层变量
+        int depth = 0;
+        // 分段生成时各段的方法，不分段时为 null
+        StringBuilder chunks;
+        // 分段生成时以 Cell 形式跨段共享的变量，及它们在 frame 中的槽位
+        final Set<ScopeAnalyzer.Variable> boxed = new HashSet<>();
+        final List<Integer> shared = new ArrayList<>();
+
+        Body(boolean isInitializer, int indent) {
+            this.isInitializer = isInitializer;
+            this.indent = indent;
+        }
+    }
+
+    // 进入函数时就有值的变量：闭包捕获的 Cell、this 与形参
+    private static final class Incoming {
+        final ScopeAnalyzer.Variable variable;
+        final int slot;
+        final String value;
+
+        // 捕获的变量，value 本身就是 Cell
+        Incoming(int slot, String cell) {
+            this.variable = null;
+            this.slot = slot;
+            this.value = cell;
+        }
+
+        Incoming(ScopeAnalyzer.Variable variable, String value) {
+            this.variable = variable;
+            this.slot = variable.slot;
+            this.value = value;
+        }
+    }
+
+    private Body body;
+
+    JavaEmitter(ScopeAnalyzer analyzer, String className) {
+        this.analyzer = analyzer;
+        this.className = className;
+    }
+
+    String emit(List<Stmt> statements) {
+        Body script = body(statements, Collections.emptyList(), analyzer.script.frameSize, false, null, "    ");
+
+        StringBuilder source = new StringBuilder();
+        source.append("import com.craftinginterpreters.jlox.compiler.runtime.*;\n\n");
+        source.append("public final class ").append(className).append(" {\n");
+        for (Map.Entry<Object, String> constant : constants.entrySet()) {
+            source.append("    static final Object ").append(constant.getValue()).append(" = ")
+                    .append(literal(constant.getKey())).append(";\n");
+        }
+        for (Map.Entry<String, String> global : globals.entrySet()) {
+            source.append("    static final Cell ").append(global.getValue())
+                    .append(" = LoxRuntime.global(\"").append(global.getKey()).append("\");\n");
+        }
+        source.append("\n    public static void main(String[] args) {\n");
+        source.append("        LoxRuntime.run(").append(className).append("::script);\n");
+        source.append("    }\n\n");
+        source.append("    public static void script() {\n").append(script.code).append("    }\n");
+        if (script.chunks != null)
+            source.append(script.chunks);
+        source.append(classes);
+        source.append("}\n");
+        return source.toString();
+    }
+
+    /*
+     * 生成函数体或顶层代码，end 是函数体最后的 return 语句，顶层代码没有
+     * 代码过长时丢弃后按段重新生成，margin 是各段方法声明的缩进
+     */
+    private Body body(List<Stmt> statements, List<Incoming> incoming, int frameSize, boolean isInitializer,
+            String end, String margin) {
+        Body enclosing = body;
+        body = new Body(isInitializer, 2);
+        for (Incoming variable : incoming) {
+            if (variable.variable == null)
+                line("Cell " + local(variable.slot) + " = " + variable.value + ";");
+            else if (variable.variable.captured)
+                line("Cell " + local(variable.slot) + " = new Cell(" + variable.value + ");");
+            else
+                line("Object " + local(variable.slot) + " = " + variable.value + ";");
+        }
+        for (Stmt stmt : statements) {
+            stmt.accept(this);
+        }
+        if (end != null)
+            line(end);
+
+        if (body.code.length() > METHOD_LIMIT) {
+            body = new Body(isInitializer, 2);
+            chunks(statements, incoming, frameSize, end, margin);
+        }
+        Body result = body;
+        body = enclosing;
+        return result;
+    }
+
+    private void chunks(List<Stmt> statements, List<Incoming> incoming, int frameSize, String end, String margin) {
+        StringBuilder main = body.code;
+        body.chunks = new StringBuilder();
+        line("Cell[] frame = new Cell[" + frameSize + "];");
+        for (Incoming variable : incoming) {
+            if (variable.variable == null) {
+                line("frame[" + variable.slot + "] = " + variable.value + ";");
+            } else {
+                line("frame[" + variable.slot + "] = new Cell(" + variable.value + ");");
+                body.boxed.add(variable.variable);
+            }
+            body.shared.add(variable.slot);
+        }
+        if (end != null)
+            line("Object result;");
+
+        statements = flatten(statements, new ArrayList<>());
+        int next = 0;
+        for (int count = 0; next < statements.size(); count++) {
+            String name = "chunk" + count;
+            int available = body.shared.size();
+            body.code = new StringBuilder();
+            body.temps = 0;
+            do {
+                statements.get(next++).accept(this);
+            } while (next < statements.size() && body.code.length() < CHUNK_LIMIT);
+            line("return LoxRuntime.FALL_THROUGH;");
+            String code = body.code.toString();
+
+            // 只从 frame 中取出这一段用到的、之前的段声明的 Cell
+            Set<String> used = new HashSet<>();
+            Matcher matcher = LOCAL.matcher(code);
+            while (matcher.find()) {
+                used.add(matcher.group());
+            }
+            body.code = new StringBuilder();
+            for (int slot : body.shared.subList(0, available)) {
+                if (used.contains(local(slot)))
+                    line("Cell " + local(slot) + " = frame[" + slot + "];");
+            }
+            body.chunks.append('\n').append(margin).append("private static Object ").append(name)
+                    .append("(Object receiver, Cell[] frame) {\n").append(body.code).append(code)
+                    .append(margin).append("}\n");
+
+            body.code = main;
+            if (end == null) {
+                line(name + "(null, frame);");
+            } else {
+                line("result = " + name + "(receiver, frame);");
+                line("if (result != LoxRuntime.FALL_THROUGH)");
+                line("    return result;");
+            }
+        }
+        if (end != null)
+            line(end);
+    }
+
+    // 函数中每个变量都有自己的槽位，顶层的块展开后块中的变量也不会冲突，块中的语句也能分到不同的段
+    private static List<Stmt> flatten(List<Stmt> statements, List<Stmt> flat) {
+        for (Stmt stmt : statements) {
+            if (stmt instanceof Stmt.Block)
+                flatten(((Stmt.Block) stmt).statements, flat);
+            else
+                flat.add(stmt);
+        }
+        return flat;
+    }
+
+    private void line(String text) {
+        for (int i = 0; i < body.indent; i++) {
+            body.code.append("    ");
+        }
+        body.code.append(text).append('\n');
+    }
+
+    // 把表达式的值存入新的临时变量
+    private String temp(String expression) {
+        return temp("Object", expression);
+    }
+
+    private String temp(String type, String expression) {
+        String name = "t" + body.temps++;
+        line(type + " " + name + " = " + expression + ";");
+        return name;
+    }
+
+    private String evaluate(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private String constant(Object value) {
+        return constants.computeIfAbsent(value, key -> "K" + constants.size());
+    }
+
+    private String global(String name) {
+        return globals.computeIfAbsent(name, key -> "g_" + key);
+    }
+
+    private static String local(int slot) {
+        return "v" + slot;
+    }
+
+    private static String literal(Object value) {
+        if (value instanceof Double) {
+            double number = (double) value;
+            // 常量折叠可能得到无穷大与 NaN，它们没有 Java 字面量形式
+            if (Double.isNaN(number) || Double.isInfinite(number))
+                return "Double.longBitsToDouble(" + Double.doubleToRawLongBits(number) + "L)";
+            return Double.toString(number);
+        }
+        return quote((String) value);
+    }
+
+    // 转义为 Java 字符串字面量
+    static String quote(String text) {
+        StringBuilder builder = new StringBuilder("\"");
+        for (char c : text.toCharArray()) {
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20)
+                        builder.append(String.format("\\%03o", (int) c));
+                    else
+                        builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    private String read(ScopeAnalyzer.Access access, Token name) {
+        if (access == null)
+            return temp("LoxRuntime.readGlobal(" + global(name.lexeme) + ", " + quote(name.lexeme) + ", "
+                    + name.line + ")");
+        if (isCell(access.variable))
+            return temp(local(access.slot) + ".value");
+        return temp(local(access.slot));
+    }
+
+    // 槽位中存放的是 Cell 的变量：被捕获的变量，以及分段生成时跨段共享的变量
+    private boolean isCell(ScopeAnalyzer.Variable variable) {
+        return variable.captured || body.boxed.contains(variable);
+    }
+
+    // 分段生成时，顶层声明的变量放入 frame 供之后的段使用
+    private boolean isShared() {
+        return body.chunks != null && body.depth == 0;
+    }
+
+    // 被捕获的函数或类需要在创建之前就准备好 Cell，使其方法体能捕获到自己
+    private void declareCell(Token name) {
+        ScopeAnalyzer.Variable variable = analyzer.declarations.get(name);
+        if (variable != null && variable.captured)
+            newCell(variable, "null");
+    }
+
+    private void define(Token name, String value, boolean cellDeclared) {
+        ScopeAnalyzer.Variable variable = analyzer.declarations.get(name);
+        if (variable == null)
+            line(global(name.lexeme) + ".value = " + value + ";");
+        else if (cellDeclared && variable.captured)
+            line(local(variable.slot) + ".value = " + value + ";");
+        else if (variable.captured || isShared())
+            newCell(variable, value);
+        else
+            line("Object " + local(variable.slot) + " = " + value + ";");
+    }
+
+    private void newCell(ScopeAnalyzer.Variable variable, String value) {
+        line("Cell " + local(variable.slot) + " = new Cell(" + value + ");");
+        if (isShared()) {
+            line("frame[" + variable.slot + "] = " + local(variable.slot) + ";");
+            body.boxed.add(variable);
+            body.shared.add(variable.slot);
+        }
+    }
+
+    // 生成函数类，返回创建闭包的表达式
+    private String function(Stmt.Function stmt, boolean isMethod, boolean isInitializer) {
+        String created = functions.get(stmt);
+        if (created != null)
+            return created;
+        ScopeAnalyzer.FunctionScope scope = analyzer.functions.get(stmt);
+        String name = "F" + classCount++ + "_" + stmt.name.lexeme;
+
+        List<Incoming> incoming = new ArrayList<>();
+        int index = 0;
+        for (ScopeAnalyzer.Capture capture : scope.captures.values()) {
+            incoming.add(new Incoming(capture.slot, "cells[" + index++ + "]"));
+        }
+        if (scope.thisVariable != null)
+            incoming.add(new Incoming(scope.thisVariable, "receiver"));
+        for (int i = 0; i < stmt.params.size(); i++) {
+            incoming.add(new Incoming(analyzer.declarations.get(stmt.params.get(i)), "arguments[" + i + "]"));
+        }
+        // 初始化函数总是返回 this
+        Body code = body(stmt.body, incoming, scope.frameSize, isInitializer,
+                isInitializer ? "return receiver;" : "return null;", "        ");
+
+        classes.append("\n    static final class ").append(name).append(" extends LoxFunction {\n");
+        classes.append("        ").append(name).append("(Cell[] cells) {\n");
+        classes.append("            super(").append(quote(stmt.name.lexeme)).append(", ").append(stmt.params.size())
+                .append(", ").append(isMethod).append(", cells);\n");
+        classes.append("        }\n\n");
+        classes.append("        @Override\n");
+        classes.append("        public Object invoke(Object receiver, Object[] arguments) {\n");
+        classes.append(code.code);
+        classes.append("        }\n");
+        if (code.chunks != null)
+            classes.append(code.chunks);
+        classes.append("    }\n");
+
+        StringBuilder cells = new StringBuilder();
+        for (ScopeAnalyzer.Capture capture : scope.captures.values()) {
+            cells.append(cells.length() == 0 ? "" : ", ").append(local(capture.enclosingSlot));
+        }
+        String array = cells.length() == 0 ? "LoxRuntime.NO_CELLS" : "new Cell[] { " + cells + " }";
+        created = "new " + name + "(" + array + ")";
+        functions.put(stmt, created);
+        return created;
+    }
+
+    private String arguments(List<Expr> arguments) {
+        if (arguments.isEmpty())
+            return "LoxRuntime.NO_ARGUMENTS";
+        StringBuilder values = new StringBuilder();
+        for (Expr argument : arguments) {
+            values.append(values.length() == 0 ? "" : ", ").append(evaluate(argument));
+        }
+        return "new Object[] { " + values + " }";
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        line("{");
+        body.indent++;
+        body.depth++;
+        for (Stmt statement : stmt.statements) {
+            statement.accept(this);
+        }
+        body.depth--;
+        body.indent--;
+        line("}");
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        declareCell(stmt.name);
+
+        String superclass = "null";
+        if (stmt.superclass != null) {
+            String value = evaluate(stmt.superclass);
+            superclass = temp("LoxClass", "LoxRuntime.superclass(" + value + ", " + stmt.superclass.name.line + ")");
+            ScopeAnalyzer.Variable variable = analyzer.superVariables.get(stmt);
+            if (variable.captured)
+                line("Cell " + local(variable.slot) + " = new Cell(" + superclass + ");");
+            else
+                line("Object " + local(variable.slot) + " = " + superclass + ";");
+        }
+
+        StringBuilder methods = new StringBuilder();
+        for (Stmt.Function method : stmt.methods) {
+            methods.append(methods.length() == 0 ? "" : ", ")
+                    .append(function(method, true, method.name.lexeme.equals("init")));
+        }
+
+        String name = classNames.get(stmt);
+        if (name == null) {
+            name = "C" + classCount++ + "_" + stmt.name.lexeme;
+            classNames.put(stmt, name);
+            classes.append("\n    static final class ").append(name).append(" extends LoxClass {\n");
+            classes.append("        ").append(name).append("(LoxClass superclass, LoxFunction[] methods) {\n");
+            classes.append("            super(").append(quote(stmt.name.lexeme)).append(", superclass, methods);\n");
+            classes.append("        }\n");
+            classes.append("    }\n");
+        }
+
+        define(stmt.name, "new " + name + "(" + superclass + ", new LoxFunction[] { " + methods + " })", true);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        evaluate(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        declareCell(stmt.name);
+        define(stmt.name, function(stmt, false, false), true);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        String value = stmt.value == null ? "null" : evaluate(stmt.value);
+        // if (true) 使其后的语句在 javac 看来仍然可达
+        if (body.isInitializer)
+            line("if (true) return receiver;");
+        else
+            line("if (true) return " + value + ";");
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        String condition = evaluate(stmt.condition);
+        line("if (LoxRuntime.isTruthy(" + condition + ")) {");
+        body.indent++;
+        stmt.thenBranch.accept(this);
+        body.indent--;
+        if (stmt.elseBranch != null) {
+            line("} else {");
+            body.indent++;
+            stmt.elseBranch.accept(this);
+            body.indent--;
+        }
+        line("}");
+        return null;
+    }
+
+    // for 语句展开为 while 后编译
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        return Desugar.forLoop(stmt).accept(this);
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        line("while (true) {");
+        body.indent++;
+        String condition = evaluate(stmt.condition);
+        line("if (!LoxRuntime.isTruthy(" + condition + "))");
+        line("    break;");
+        stmt.body.accept(this);
+        body.indent--;
+        line("}");
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        line("LoxRuntime.print(" + evaluate(stmt.expression) + ");");
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        String value = stmt.initializer == null ? "null" : evaluate(stmt.initializer);
+        define(stmt.name, value, false);
+        return null;
+    }
+
+    @Override
+    public String visitAssignExpr(Expr.Assign expr) {
+        String value = evaluate(expr.value);
+        ScopeAnalyzer.Access access = analyzer.accesses.get(expr);
+        if (access == null)
+            return temp("LoxRuntime.assignGlobal(" + global(expr.name.lexeme) + ", " + quote(expr.name.lexeme)
+                    + ", " + value + ", " + expr.name.line + ")");
+        if (isCell(access.variable))
+            line(local(access.slot) + ".value = " + value + ";");
+        else
+            line(local(access.slot) + " = " + value + ";");
+        return value;
+    }
+
+    @Override
+    public String visitBinaryExpr(Expr.Binary expr) {
+        String left = evaluate(expr.left);
+        String right = evaluate(expr.right);
+        String operation;
+        switch (expr.operator.type) {
+            case PLUS:
+                operation = "add";
+                break;
+            case MINUS:
+                operation = "subtract";
+                break;
+            case STAR:
+                operation = "multiply";
+                break;
+            case SLASH:
+                operation = "divide";
+                break;
+            case GREATER:
+                operation = "greater";
+                break;
+            case GREATER_EQUAL:
+                operation = "greaterEqual";
+                break;
+            case LESS:
+                operation = "less";
+                break;
+            case LESS_EQUAL:
+                operation = "lessEqual";
+                break;
+            case EQUAL_EQUAL:
+                return temp("LoxRuntime.isEqual(" + left + ", " + right + ")");
+            case BANG_EQUAL:
+                return temp("LoxRuntime.not(LoxRuntime.isEqual(" + left + ", " + right + "))");
+            default:
+                throw new IllegalArgumentException("Unexpected binary operator " + expr.operator.lexeme);
+        }
+        return temp("LoxRuntime." + operation + "(" + left + ", " + right + ", " + expr.operator.line + ")");
+    }
+
+    @Override
+    public String visitCallExpr(Expr.Call expr) {
+        int line = expr.paren.line;
+        if (expr.callee instanceof Expr.Get) {
+            // 先查找属性再求值实参，找到方法时不创建绑定方法
+            Expr.Get get = (Expr.Get) expr.callee;
+            String object = evaluate(get.object);
+            String callee = temp("LoxRuntime.lookup(" + object + ", " + quote(get.name.lexeme) + ", "
+                    + get.name.line + ")");
+            return temp("LoxRuntime.invoke(" + object + ", " + callee + ", " + arguments(expr.arguments) + ", "
+                    + line + ")");
+        }
+        if (expr.callee instanceof Expr.Super) {
+            Expr.Super sup = (Expr.Super) expr.callee;
+            String superclass = read(analyzer.accesses.get(sup), sup.keyword);
+            String receiver = read(analyzer.superReceivers.get(sup), sup.keyword);
+            String method = temp("LoxFunction", "LoxRuntime.superMethod(" + superclass + ", "
+                    + quote(sup.method.lexeme) + ", " + sup.method.line + ")");
+            return temp("LoxRuntime.invokeMethod(" + method + ", " + receiver + ", " + arguments(expr.arguments)
+                    + ", " + line + ")");
+        }
+        String callee = evaluate(expr.callee);
+        return temp("LoxRuntime.call(" + callee + ", " + arguments(expr.arguments) + ", " + line + ")");
+    }
+
+    // 内联调用按原来的调用执行
+    @Override
+    public String visitInlineExpr(Expr.Inline expr) {
+        return visitCallExpr(expr.call);
+    }
+
+    @Override
+    public String visitGetExpr(Expr.Get expr) {
+        String object = evaluate(expr.object);
+        return temp("LoxRuntime.get(" + object + ", " + quote(expr.name.lexeme) + ", " + expr.name.line + ")");
+    }
+
+    @Override
+    public String visitSetExpr(Expr.Set expr) {
+        String object = evaluate(expr.object);
+        String instance = temp("LoxInstance", "LoxRuntime.fields(" + object + ", " + expr.name.line + ")");
+        String value = evaluate(expr.value);
+        return temp("LoxRuntime.set(" + instance + ", " + quote(expr.name.lexeme) + ", " + value + ")");
+    }
+
+    @Override
+    public String visitSuperExpr(Expr.Super expr) {
+        String superclass = read(analyzer.accesses.get(expr), expr.keyword);
+        String receiver = read(analyzer.superReceivers.get(expr), expr.keyword);
+        return temp("LoxRuntime.bindSuper(" + superclass + ", " + receiver + ", " + quote(expr.method.lexeme)
+                + ", " + expr.method.line + ")");
+    }
+
+    @Override
+    public String visitThisExpr(Expr.This expr) {
+        return read(analyzer.accesses.get(expr), expr.keyword);
+    }
+
+    @Override
+    public String visitGroupingExpr(Expr.Grouping expr) {
+        return evaluate(expr.expression);
+    }
+
+    @Override
+    public String visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null)
+            return "null";
+        if (expr.value instanceof Boolean)
+            return (boolean) expr.value ? "Boolean.TRUE" : "Boolean.FALSE";
+        return constant(expr.value);
+    }
+
+    // 逻辑运算符短路求值，右操作数的代码只在需要时执行
+    @Override
+    public String visitLogicalExpr(Expr.Logical expr) {
+        String result = temp(evaluate(expr.left));
+        if (expr.operator.type == TokenType.OR)
+            line("if (!LoxRuntime.isTruthy(" + result + ")) {");
+        else
+            line("if (LoxRuntime.isTruthy(" + result + ")) {");
+        body.indent++;
+        line(result + " = " + evaluate(expr.right) + ";");
+        body.indent--;
+        line("}");
+        return result;
+    }
+
+    @Override
+    public String visitUnaryExpr(Expr.Unary expr) {
+        String operand = evaluate(expr.right);
+        if (expr.operator.type == TokenType.MINUS)
+            return temp("LoxRuntime.negate(" + operand + ", " + expr.operator.line + ")");
+        return temp("LoxRuntime.not(" + operand + ")");
+    }
+
+    @Override
+    public String visitVariableExpr(Expr.Variable expr) {
+        return read(analyzer.accesses.get(expr), expr.name);
+    }
+}
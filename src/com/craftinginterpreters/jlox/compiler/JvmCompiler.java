@@ -0,0 +1,180 @@
+package com.craftinginterpreters.jlox.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import com.craftinginterpreters.jlox.JLox;
+import com.craftinginterpreters.jlox.Stmt;
+import com.craftinginterpreters.jlox.compiler.runtime.LoxError;
+import com.craftinginterpreters.jlox.nodes.ScopeAnalyzer;
+
+/*
+ * 提前编译后端：把 Lox 程序编译为 JVM 类文件
+ *
+ * 语法树先翻译为 Java 源码（见 JavaEmitter），再用当前 JDK 自带的 javac 在内存中编译，
+ * 得到的类可以直接加载运行，也可以连同运行时支持类写入可执行 jar。
+ * 编译后的代码由 HotSpot 像普通 Java 代码一样即时编译。
+ */
+public class JvmCompiler {
+    private static final String MAIN_CLASS = "Main";
+    private static final String RUNTIME_PACKAGE = "com/craftinginterpreters/jlox/compiler/runtime/";
+    // jar 中需要附带的运行时支持类
+    private static final List<String> RUNTIME_CLASSES = Arrays.asList(
+            "Cell", "LoxError", "LoxCallable", "LoxFunction", "LoxBoundMethod",
+            "LoxClass", "LoxInstance", "LoxRuntime");
+
+    // 编译并在当前进程中运行，运行时错误通过 JLox 报告
+    public void run(List<Stmt> statements) {
+        Map<String, byte[]> classes = compile(statements);
+        if (classes == null)
+            return;
+        ClassLoader loader = loader(classes);
+        try {
+            loader.loadClass(MAIN_CLASS).getMethod("script").invoke(null);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof LoxError) {
+                LoxError error = (LoxError) cause;
+                JLox.runtimeError(error.line, error.getMessage());
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IllegalStateException(cause);
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // 编译为可以用 java -jar 运行的 jar
+    public void writeJar(List<Stmt> statements, Path path) throws IOException {
+        Map<String, byte[]> classes = compile(statements);
+        if (classes == null)
+            return;
+
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, MAIN_CLASS);
+
+        try (JarOutputStream jar = new JarOutputStream(Files.newOutputStream(path), manifest)) {
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                jar.putNextEntry(new JarEntry(entry.getKey().replace('.', '/') + ".class"));
+                jar.write(entry.getValue());
+                jar.closeEntry();
+            }
+            for (String name : RUNTIME_CLASSES) {
+                String resource = RUNTIME_PACKAGE + name + ".class";
+                jar.putNextEntry(new JarEntry(resource));
+                try (InputStream input = JvmCompiler.class.getClassLoader().getResourceAsStream(resource)) {
+                    if (input == null)
+                        throw new IOException("Missing runtime class " + resource);
+                    input.transferTo(jar);
+                }
+                jar.closeEntry();
+            }
+        }
+    }
+
+    // 返回类名到类文件内容的映射，无法编译时通过 JLox 报告错误并返回 null
+    Map<String, byte[]> compile(List<Stmt> statements) {
+        ScopeAnalyzer analyzer = new ScopeAnalyzer();
+        analyzer.analyze(statements);
+        try {
+            return compileSource(MAIN_CLASS, new JavaEmitter(analyzer, MAIN_CLASS).emit(statements));
+        } catch (IllegalStateException e) {
+            // javac 的错误对应的是生成的代码而不是 Lox 源码中的某一行
+            JLox.error(e.getMessage());
+            return null;
+        }
+    }
+
+    // 从内存中加载编译得到的类
+    private static ClassLoader loader(Map<String, byte[]> classes) {
+        return new ClassLoader(JvmCompiler.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name) throws ClassNotFoundException {
+                byte[] bytes = classes.get(name);
+                if (bytes == null)
+                    throw new ClassNotFoundException(name);
+                return defineClass(name, bytes, 0, bytes.length);
+            }
+        };
+    }
+
+    // 在内存中编译一个 Java 源文件
+    private static Map<String, byte[]> compileSource(String className, String source) {
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if (javac == null)
+            throw new IllegalStateException("Compiling to JVM bytecode requires a JDK.");
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        StandardJavaFileManager standard = javac.getStandardFileManager(diagnostics, null, null);
+        JavaFileManager fileManager = new ForwardingJavaFileManager<JavaFileManager>(standard) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String className,
+                    JavaFileObject.Kind kind, FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + ".class"),
+                        kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return new ByteArrayOutputStream() {
+                            @Override
+                            public void close() {
+                                classes.put(className, toByteArray());
+                            }
+                        };
+                    }
+                };
+            }
+        };
+
+        JavaFileObject unit = new SimpleJavaFileObject(URI.create("mem:///" + className + ".java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+
+        List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"), "-g:none");
+        boolean success = javac.getTask(null, fileManager, diagnostics, options, null,
+                Collections.singletonList(unit)).call();
+        if (!success) {
+            StringBuilder message = new StringBuilder("Generated code failed to compile:");
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                message.append('\n').append(diagnostic.getMessage(null));
+            }
+            throw new IllegalStateException(message.toString());
+        }
+        return classes;
+    }
+}
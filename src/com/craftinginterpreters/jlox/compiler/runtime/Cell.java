@@ -0,0 +1,16 @@
+package com.craftinginterpreters.jlox.compiler.runtime;
+
+/*
+ * 被闭包捕获的变量及全局变量的存储单元
+ * 未被捕获的局部变量直接编译为 JVM 局部变量
+ */
+public final class Cell {
+    // 全局变量尚未定义时的取值，与 nil 区分
+    public static final Object UNDEFINED = new Object();
+
+    public Object value;
+
+    public Cell(Object value) {
+        this.value = value;
+    }
+}
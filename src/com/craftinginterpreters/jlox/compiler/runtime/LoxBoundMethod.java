@@ -0,0 +1,26 @@
+package com.craftinginterpreters.jlox.compiler.runtime;
+
+public final class LoxBoundMethod implements LoxCallable {
+    private final LoxFunction method;
+    private final Object receiver;
+
+    LoxBoundMethod(LoxFunction method, Object receiver) {
+        this.method = method;
+        this.receiver = receiver;
+    }
+
+    @Override
+    public int arity() {
+        return method.arity();
+    }
+
+    @Override
+    public Object call(Object[] arguments) {
+        return method.invoke(receiver, arguments);
+    }
+
+    @Override
+    public String toString() {
+        return method.toString();
+    }
+}
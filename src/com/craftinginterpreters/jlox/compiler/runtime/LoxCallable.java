@@ -0,0 +1,9 @@
+package com.craftinginterpreters.jlox.compiler.runtime;
+
+public interface LoxCallable {
+
+    // 函数期望的参数数量
+    int arity();
+
+    Object call(Object[] arguments);
+}
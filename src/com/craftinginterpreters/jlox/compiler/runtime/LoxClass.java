@@ -0,0 +1,53 @@
+package com.craftinginterpreters.jlox.compiler.runtime;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * 编译后的 Lox 类的基类，每个 Lox 类声明编译为它的一个子类，
+ * 类声明每执行一次创建一个实例，方法捕获的是执行时的 Cell
+ */
+public abstract class LoxClass implements LoxCallable {
+    final String name;
+    final LoxClass superclass;
+    private final Map<String, LoxFunction> methods = new HashMap<>();
+    // 构造函数 init，类创建后不再改变
+    private final LoxFunction initializer;
+
+    protected LoxClass(String name, LoxClass superclass, LoxFunction[] methods) {
+        this.name = name;
+        this.superclass = superclass;
+        for (LoxFunction method : methods) {
+            this.methods.put(method.name(), method);
+        }
+        this.initializer = findMethod("init");
+    }
+
+    // 优先返回类自身的方法，其次返回超类的方法
+    final LoxFunction findMethod(String name) {
+        LoxFunction method = methods.get(name);
+        if (method != null)
+            return method;
+        if (superclass != null)
+            return superclass.findMethod(name);
+        return null;
+    }
+
+    @Override
+    public final int arity() {
+        return initializer == null ? 0 : initializer.arity();
+    }
+
+    @Override
+    public final Object call(Object[] arguments) {
+        LoxInstance instance = new LoxInstance(this);
+        if (initializer != null)
+            initializer.invoke(instance, arguments);
+        return instance;
+    }
+
+    @Override
+    public final String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,11 @@
+package com.craftinginterpreters.jlox.compiler.runtime;
+
+// 编译后的程序在运行时出现的错误，记录出错的源码行号
+public final class LoxError extends RuntimeException {
+    public final int line;
+
+    public LoxError(int line, String message) {
+        super(message, null, false, false);
+        this.line = line;
+    }
+}
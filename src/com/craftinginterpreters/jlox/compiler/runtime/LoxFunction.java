@@ -0,0 +1,48 @@
+package com.craftinginterpreters.jlox.compiler.runtime;
+
+/*
+ * 编译后的 Lox 函数的基类，每个 Lox 函数编译为它的一个子类
+ *
+ * 方法以未绑定的形式保存在类中，调用时由 invoke 传入 this；
+ * 只有当方法作为值被取出时才创建 LoxBoundMethod。
+ */
+public abstract class LoxFunction implements LoxCallable {
+    private final String name;
+    private final int arity;
+    private final boolean method;
+    // 创建闭包时捕获的 Cell
+    protected final Cell[] cells;
+
+    protected LoxFunction(String name, int arity, boolean method, Cell[] cells) {
+        this.name = name;
+        this.arity = arity;
+        this.method = method;
+        this.cells = cells;
+    }
+
+    public abstract Object invoke(Object receiver, Object[] arguments);
+
+    public final String name() {
+        return name;
+    }
+
+    // 未绑定的方法只存在于类的方法表中，不会作为值出现在程序里
+    public final boolean isMethod() {
+        return method;
+    }
+
+    @Override
+    public final int arity() {
+        return arity;
+    }
+
+    @Override
+    public Object call(Object[] arguments) {
+        return invoke(null, arguments);
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + name + ">";
+    }
+}
@@ -0,0 +1,217 @@
+package com.craftinginterpreters.jlox.compiler.runtime;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * 编译后的代码调用的运行时支持
+ *
+ * 运算的语义与错误信息与树遍历解释器一致，出错时抛出带行号的 LoxError。
+ */
+public final class LoxRuntime {
+    // 全局变量按名字绑定到 Cell，同一进程中多次运行（如 REPL 逐行输入）共享
+    private static final Map<String, Cell> globals = new HashMap<>();
+    // 无参调用共用的实参数组
+    public static final Object[] NO_ARGUMENTS = new Object[0];
+    public static final Cell[] NO_CELLS = new Cell[0];
+    // 分段编译的函数体中，一段代码执行完而没有 return 时的返回值
+    public static final Object FALL_THROUGH = new Object();
+
+    private LoxRuntime() {
+    }
+
+    // 编译后程序的入口，报告运行时错误并以 70 退出
+    public static void run(Runnable script) {
+        try {
+            script.run();
+        } catch (LoxError error) {
+            System.err.println(error.getMessage() + "\n[line " + error.line + "]");
+            System.exit(70);
+        }
+    }
+
+    public static Cell global(String name) {
+        return globals.computeIfAbsent(name, key -> new Cell(Cell.UNDEFINED));
+    }
+
+    public static Object readGlobal(Cell cell, String name, int line) {
+        Object value = cell.value;
+        if (value == Cell.UNDEFINED)
+            throw new LoxError(line, "Undefined variable '" + name + "'.");
+        return value;
+    }
+
+    public static Object assignGlobal(Cell cell, String name, Object value, int line) {
+        if (cell.value == Cell.UNDEFINED)
+            throw new LoxError(line, "Undefined variable '" + name + "'.");
+        cell.value = value;
+        return value;
+    }
+
+    // false 和 nil 是假，其他都是真
+    public static boolean isTruthy(Object object) {
+        if (object == null)
+            return false;
+        if (object instanceof Boolean)
+            return (boolean) object;
+        return true;
+    }
+
+    public static Object isEqual(Object a, Object b) {
+        if (a == null)
+            return b == null;
+        return a.equals(b);
+    }
+
+    public static Object not(Object value) {
+        return !isTruthy(value);
+    }
+
+    public static Object negate(Object value, int line) {
+        return -number(value, line);
+    }
+
+    public static Object add(Object left, Object right, int line) {
+        if (left instanceof Double && right instanceof Double)
+            return (double) left + (double) right;
+        if (left instanceof String && right instanceof String)
+            return (String) left + (String) right;
+        throw new LoxError(line, "Operands must be numbers or strings");
+    }
+
+    public static Object subtract(Object left, Object right, int line) {
+        return number(left, line) - number(right, line);
+    }
+
+    public static Object multiply(Object left, Object right, int line) {
+        return number(left, line) * number(right, line);
+    }
+
+    public static Object divide(Object left, Object right, int line) {
+        return number(left, line) / number(right, line);
+    }
+
+    public static Object greater(Object left, Object right, int line) {
+        return number(left, line) > number(right, line);
+    }
+
+    public static Object greaterEqual(Object left, Object right, int line) {
+        return number(left, line) >= number(right, line);
+    }
+
+    public static Object less(Object left, Object right, int line) {
+        return number(left, line) < number(right, line);
+    }
+
+    public static Object lessEqual(Object left, Object right, int line) {
+        return number(left, line) <= number(right, line);
+    }
+
+    private static double number(Object value, int line) {
+        if (value instanceof Double)
+            return (double) value;
+        throw new LoxError(line, "Operand must be a number");
+    }
+
+    public static void print(Object value) {
+        System.out.println(stringify(value));
+    }
+
+    static String stringify(Object object) {
+        if (object == null)
+            return "nil";
+
+        if (object instanceof Double) {
+            String text = object.toString();
+            if (text.endsWith(".0"))
+                text = text.substring(0, text.length() - 2);
+            return text;
+        }
+        return object.toString();
+    }
+
+    public static Object call(Object callee, Object[] arguments, int line) {
+        if (!(callee instanceof LoxCallable))
+            throw new LoxError(line, "Can only call functions and classes");
+        LoxCallable function = (LoxCallable) callee;
+        checkArity(function.arity(), arguments.length, line);
+        return function.call(arguments);
+    }
+
+    private static void checkArity(int arity, int count, int line) {
+        if (count != arity)
+            throw new LoxError(line, "Expected " + arity + " arguments but got " + count + ".");
+    }
+
+    private static LoxInstance instance(Object object, int line) {
+        if (object instanceof LoxInstance)
+            return (LoxInstance) object;
+        throw new LoxError(line, "Only instances have properties.");
+    }
+
+    public static Object get(Object object, String name, int line) {
+        LoxInstance instance = instance(object, line);
+        Object field = instance.fields.get(name);
+        if (field != null || instance.fields.containsKey(name))
+            return field;
+        LoxFunction method = instance.klass.findMethod(name);
+        if (method != null)
+            return new LoxBoundMethod(method, instance);
+        throw new LoxError(line, "Undefined property '" + name + "'.");
+    }
+
+    /*
+     * 方法调用的第一步：在求值实参之前查找属性
+     * 字段遮蔽同名方法；找到方法时返回未绑定的方法，由 invoke 直接以对象作为 this 调用
+     */
+    public static Object lookup(Object object, String name, int line) {
+        LoxInstance instance = instance(object, line);
+        Object field = instance.fields.get(name);
+        if (field != null || instance.fields.containsKey(name))
+            return field;
+        LoxFunction method = instance.klass.findMethod(name);
+        if (method != null)
+            return method;
+        throw new LoxError(line, "Undefined property '" + name + "'.");
+    }
+
+    public static Object invoke(Object receiver, Object callee, Object[] arguments, int line) {
+        if (callee instanceof LoxFunction && ((LoxFunction) callee).isMethod())
+            return invokeMethod((LoxFunction) callee, receiver, arguments, line);
+        return call(callee, arguments, line);
+    }
+
+    public static Object invokeMethod(LoxFunction method, Object receiver, Object[] arguments, int line) {
+        checkArity(method.arity(), arguments.length, line);
+        return method.invoke(receiver, arguments);
+    }
+
+    // 赋值前检查对象，值在检查之后才求值
+    public static LoxInstance fields(Object object, int line) {
+        if (object instanceof LoxInstance)
+            return (LoxInstance) object;
+        throw new LoxError(line, "Only instances have fields.");
+    }
+
+    public static Object set(LoxInstance instance, String name, Object value) {
+        instance.fields.put(name, value);
+        return value;
+    }
+
+    public static LoxClass superclass(Object value, int line) {
+        if (value instanceof LoxClass)
+            return (LoxClass) value;
+        throw new LoxError(line, "Superclass must be a class.");
+    }
+
+    public static LoxFunction superMethod(Object superclass, String name, int line) {
+        LoxFunction method = ((LoxClass) superclass).findMethod(name);
+        if (method == null)
+            throw new LoxError(line, "Undefined property '" + name + "'.");
+        return method;
+    }
+
+    public static Object bindSuper(Object superclass, Object receiver, String name, int line) {
+        return new LoxBoundMethod(superMethod(superclass, name, line), receiver);
+    }
+}
@@ -0,0 +1,310 @@
+package com.craftinginterpreters.jlox.nodes;
+
+import com.craftinginterpreters.jlox.RuntimeError;
+import com.craftinginterpreters.jlox.Token;
+
+/*
+ * 二元运算节点
+ *
+ * + 节点初始时未特化，第一次执行后根据操作数类型把自身替换为
+ * 数字相加或字符串拼接节点；特化节点遇到类型不符的操作数时退化为通用节点，
+ * 此后不再改写。操作数已经求值过，改写时不会重复执行子节点。
+ *
+ * 其余算术与比较运算只接受数字，节点本身就是数字特化的，
+ * 类型检查失败即为运行时错误。
+ *
+ * 数字运算通过 executeDouble 向子节点索取原始 double，
+ * 嵌套的算术表达式中间结果不装箱，只在结果离开运算（存入变量、字段或作为实参）时装箱一次。
+ */
+abstract class BinaryNode extends ExprNode {
+    protected ExprNode left;
+    protected ExprNode right;
+    protected final Token operator;
+
+    BinaryNode(Token operator, ExprNode left, ExprNode right) {
+        this.operator = operator;
+        this.left = adopt(left);
+        this.right = adopt(right);
+    }
+
+    static BinaryNode create(Token operator, ExprNode left, ExprNode right) {
+        switch (operator.type) {
+            case PLUS:
+                return new AddUninitialized(operator, left, right);
+            case MINUS:
+                return new Subtract(operator, left, right);
+            case STAR:
+                return new Multiply(operator, left, right);
+            case SLASH:
+                return new Divide(operator, left, right);
+            case GREATER:
+                return new Greater(operator, left, right);
+            case GREATER_EQUAL:
+                return new GreaterEqual(operator, left, right);
+            case LESS:
+                return new Less(operator, left, right);
+            case LESS_EQUAL:
+                return new LessEqual(operator, left, right);
+            case EQUAL_EQUAL:
+                return new Equal(operator, left, right);
+            case BANG_EQUAL:
+                return new NotEqual(operator, left, right);
+            default:
+                throw new IllegalArgumentException("Unexpected binary operator " + operator.lexeme);
+        }
+    }
+
+    @Override
+    void replaceChild(Node oldChild, Node newChild) {
+        if (left == oldChild)
+            left = (ExprNode) newChild;
+        else
+            right = (ExprNode) newChild;
+    }
+
+    // + 的通用语义
+    final Object add(Object l, Object r) {
+        if (l instanceof Double && r instanceof Double)
+            return (double) l + (double) r;
+        if (l instanceof String && r instanceof String)
+            return (String) l + (String) r;
+        throw new RuntimeError(operator, "Operands must be numbers or strings");
+    }
+
+    static final class AddUninitialized extends BinaryNode {
+        AddUninitialized(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            Object l = left.execute(frame);
+            Object r = right.execute(frame);
+            BinaryNode specialized;
+            if (l instanceof Double && r instanceof Double)
+                specialized = new AddDoubles(operator, left, right);
+            else if (l instanceof String && r instanceof String)
+                specialized = new AddStrings(operator, left, right);
+            else
+                specialized = new AddGeneric(operator, left, right);
+            return replace(specialized).add(l, r);
+        }
+    }
+
+    static final class AddDoubles extends BinaryNode {
+        AddDoubles(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            try {
+                return executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+
+        // 操作数不是数字时退化为通用节点，结果不是数字则交给调用者处理
+        @Override
+        double executeDouble(Object[] frame) throws UnexpectedResultException {
+            double l;
+            try {
+                l = left.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return expectDouble(generalize(e.result, right.execute(frame)));
+            }
+            try {
+                return l + right.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return expectDouble(generalize(l, e.result));
+            }
+        }
+
+        private Object generalize(Object l, Object r) {
+            return replace(new AddGeneric(operator, left, right)).add(l, r);
+        }
+    }
+
+    static final class AddStrings extends BinaryNode {
+        AddStrings(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            Object l = left.execute(frame);
+            Object r = right.execute(frame);
+            if (l instanceof String && r instanceof String)
+                return (String) l + (String) r;
+            return replace(new AddGeneric(operator, left, right)).add(l, r);
+        }
+    }
+
+    static final class AddGeneric extends BinaryNode {
+        AddGeneric(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            return add(left.execute(frame), right.execute(frame));
+        }
+    }
+
+    // 只接受数字的运算
+    abstract static class Numeric extends BinaryNode {
+        Numeric(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        // 左操作数不是数字时，右操作数仍要先求值再报错
+        final double leftOperand(Object[] frame) {
+            try {
+                return left.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                right.execute(frame);
+                throw new RuntimeError(operator, "Operand must be a number");
+            }
+        }
+
+        final double rightOperand(Object[] frame) {
+            try {
+                return right.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                throw new RuntimeError(operator, "Operand must be a number");
+            }
+        }
+    }
+
+    abstract static class Arithmetic extends Numeric {
+        Arithmetic(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        abstract double apply(double l, double r);
+
+        @Override
+        final Object execute(Object[] frame) {
+            return apply(leftOperand(frame), rightOperand(frame));
+        }
+
+        @Override
+        final double executeDouble(Object[] frame) {
+            return apply(leftOperand(frame), rightOperand(frame));
+        }
+    }
+
+    abstract static class Comparison extends Numeric {
+        Comparison(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        abstract boolean test(double l, double r);
+
+        @Override
+        final Object execute(Object[] frame) {
+            return test(leftOperand(frame), rightOperand(frame));
+        }
+    }
+
+    static final class Subtract extends Arithmetic {
+        Subtract(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        double apply(double l, double r) {
+            return l - r;
+        }
+    }
+
+    static final class Multiply extends Arithmetic {
+        Multiply(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        double apply(double l, double r) {
+            return l * r;
+        }
+    }
+
+    static final class Divide extends Arithmetic {
+        Divide(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        double apply(double l, double r) {
+            return l / r;
+        }
+    }
+
+    static final class Greater extends Comparison {
+        Greater(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        boolean test(double l, double r) {
+            return l > r;
+        }
+    }
+
+    static final class GreaterEqual extends Comparison {
+        GreaterEqual(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        boolean test(double l, double r) {
+            return l >= r;
+        }
+    }
+
+    static final class Less extends Comparison {
+        Less(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        boolean test(double l, double r) {
+            return l < r;
+        }
+    }
+
+    static final class LessEqual extends Comparison {
+        LessEqual(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        boolean test(double l, double r) {
+            return l <= r;
+        }
+    }
+
+    // 相等比较对任意类型都有定义，语义与 equals 一致
+    static final class Equal extends BinaryNode {
+        Equal(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            return isEqual(left.execute(frame), right.execute(frame));
+        }
+    }
+
+    static final class NotEqual extends BinaryNode {
+        NotEqual(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            return !isEqual(left.execute(frame), right.execute(frame));
+        }
+    }
+}
@@ -0,0 +1,577 @@
+package com.craftinginterpreters.jlox.nodes;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.craftinginterpreters.jlox.RuntimeError;
+import com.craftinginterpreters.jlox.Token;
+
+/*
+ * 表达式节点
+ *
+ * 变量访问在构建节点树时已确定为帧槽位、Cell 或全局 Cell，运行时不再查找环境链；
+ * 二元运算节点见 BinaryNode，它们会根据观察到的操作数类型改写自身。
+ */
+abstract class ExprNode extends Node {
+
+    abstract Object execute(Object[] frame);
+
+    /*
+     * 以原始 double 求值，中间结果不装箱
+     * 结果不是数字时抛出 UnexpectedResultException，产生数字的节点应覆盖此方法
+     */
+    double executeDouble(Object[] frame) throws UnexpectedResultException {
+        return expectDouble(execute(frame));
+    }
+
+    static double expectDouble(Object value) throws UnexpectedResultException {
+        if (value instanceof Double)
+            return (double) value;
+        throw new UnexpectedResultException(value);
+    }
+
+    // 依次对实参求值
+    static Object[] executeArguments(ExprNode[] arguments, Object[] frame) {
+        Object[] values = new Object[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            values[i] = arguments[i].execute(frame);
+        }
+        return values;
+    }
+
+    static void replaceIn(ExprNode[] children, Node oldChild, Node newChild) {
+        for (int i = 0; i < children.length; i++) {
+            if (children[i] == oldChild)
+                children[i] = (ExprNode) newChild;
+        }
+    }
+
+    // 调用任意可调用对象，检查类型与参数数量
+    static Object call(Object callee, Object[] arguments, Token paren) {
+        if (!(callee instanceof LoxCallable))
+            throw new RuntimeError(paren, "Can only call functions and classes");
+        LoxCallable function = (LoxCallable) callee;
+        checkArity(function.arity(), arguments.length, paren);
+        return function.call(arguments);
+    }
+
+    static void checkArity(int arity, int count, Token paren) {
+        if (count != arity)
+            throw new RuntimeError(paren, "Expected " + arity + " arguments but got " + count + ".");
+    }
+
+    static final class Literal extends ExprNode {
+        private final Object value;
+        private final double number;
+
+        Literal(Object value) {
+            this.value = value;
+            this.number = value instanceof Double ? (double) value : 0;
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            return value;
+        }
+
+        @Override
+        double executeDouble(Object[] frame) throws UnexpectedResultException {
+            if (value instanceof Double)
+                return number;
+            throw new UnexpectedResultException(value);
+        }
+    }
+
+    static final class ReadLocal extends ExprNode {
+        private final int slot;
+
+        ReadLocal(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            return frame[slot];
+        }
+    }
+
+    static final class ReadCell extends ExprNode {
+        private final int slot;
+
+        ReadCell(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            return ((Cell) frame[slot]).value;
+        }
+    }
+
+    static final class ReadGlobal extends ExprNode {
+        private final Cell cell;
+        private final Token name;
+
+        ReadGlobal(Cell cell, Token name) {
+            this.cell = cell;
+            this.name = name;
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            Object value = cell.value;
+            if (value == Cell.UNDEFINED)
+                throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+            return value;
+        }
+    }
+
+    static final class WriteLocal extends ExprNode {
+        private final int slot;
+        private ExprNode value;
+
+        WriteLocal(int slot, ExprNode value) {
+            this.slot = slot;
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            Object result = value.execute(frame);
+            frame[slot] = result;
+            return result;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            value = (ExprNode) newChild;
+        }
+    }
+
+    static final class WriteCell extends ExprNode {
+        private final int slot;
+        private ExprNode value;
+
+        WriteCell(int slot, ExprNode value) {
+            this.slot = slot;
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            Object result = value.execute(frame);
+            ((Cell) frame[slot]).value = result;
+            return result;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            value = (ExprNode) newChild;
+        }
+    }
+
+    static final class WriteGlobal extends ExprNode {
+        private final Cell cell;
+        private final Token name;
+        private ExprNode value;
+
+        WriteGlobal(Cell cell, Token name, ExprNode value) {
+            this.cell = cell;
+            this.name = name;
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            Object result = value.execute(frame);
+            if (cell.value == Cell.UNDEFINED)
+                throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+            cell.value = result;
+            return result;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            value = (ExprNode) newChild;
+        }
+    }
+
+    static final class Negate extends ExprNode {
+        private final Token operator;
+        private ExprNode operand;
+
+        Negate(Token operator, ExprNode operand) {
+            this.operator = operator;
+            this.operand = adopt(operand);
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            return executeDouble(frame);
+        }
+
+        @Override
+        double executeDouble(Object[] frame) {
+            try {
+                return -operand.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                throw new RuntimeError(operator, "Operand must be a number");
+            }
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            operand = (ExprNode) newChild;
+        }
+    }
+
+    static final class Not extends ExprNode {
+        private ExprNode operand;
+
+        Not(ExprNode operand) {
+            this.operand = adopt(operand);
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            return !isTruthy(operand.execute(frame));
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            operand = (ExprNode) newChild;
+        }
+    }
+
+    // 逻辑运算符返回具有适当真实性的操作数本身
+    static final class And extends ExprNode {
+        private ExprNode left;
+        private ExprNode right;
+
+        And(ExprNode left, ExprNode right) {
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            Object value = left.execute(frame);
+            if (!isTruthy(value))
+                return value;
+            return right.execute(frame);
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (left == oldChild)
+                left = (ExprNode) newChild;
+            else
+                right = (ExprNode) newChild;
+        }
+    }
+
+    static final class Or extends ExprNode {
+        private ExprNode left;
+        private ExprNode right;
+
+        Or(ExprNode left, ExprNode right) {
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            Object value = left.execute(frame);
+            if (isTruthy(value))
+                return value;
+            return right.execute(frame);
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (left == oldChild)
+                left = (ExprNode) newChild;
+            else
+                right = (ExprNode) newChild;
+        }
+    }
+
+    static final class Call extends ExprNode {
+        private ExprNode callee;
+        private final ExprNode[] arguments;
+        private final Token paren;
+
+        Call(ExprNode callee, ExprNode[] arguments, Token paren) {
+            this.callee = adopt(callee);
+            this.arguments = adopt(arguments);
+            this.paren = paren;
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            Object function = callee.execute(frame);
+            return call(function, executeArguments(arguments, frame), paren);
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (callee == oldChild)
+                callee = (ExprNode) newChild;
+            else
+                replaceIn(arguments, oldChild, newChild);
+        }
+    }
+
+    /*
+     * 方法调用 object.name(arguments)
+     * 求值顺序与先取属性再调用一致：对象、属性查找及其错误、实参，
+     * 但找到方法时直接以对象作为 this 调用，不创建绑定方法
+     */
+    static final class Invoke extends ExprNode {
+        private ExprNode object;
+        private final Token name;
+        private final ExprNode[] arguments;
+        private final Token paren;
+
+        Invoke(ExprNode object, Token name, ExprNode[] arguments, Token paren) {
+            this.object = adopt(object);
+            this.name = name;
+            this.arguments = adopt(arguments);
+            this.paren = paren;
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            Object receiver = object.execute(frame);
+            if (!(receiver instanceof LoxInstance))
+                throw new RuntimeError(name, "Only instances have properties.");
+            LoxInstance instance = (LoxInstance) receiver;
+
+            // 字段会遮蔽同名方法
+            Object field = instance.fields.get(name.lexeme);
+            if (field != null || instance.fields.containsKey(name.lexeme))
+                return call(field, executeArguments(arguments, frame), paren);
+
+            LoxFunction method = instance.klass.findMethod(name.lexeme);
+            if (method == null)
+                throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+            Object[] values = executeArguments(arguments, frame);
+            checkArity(method.arity(), values.length, paren);
+            return method.invoke(instance, values);
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (object == oldChild)
+                object = (ExprNode) newChild;
+            else
+                replaceIn(arguments, oldChild, newChild);
+        }
+    }
+
+    static final class Get extends ExprNode {
+        private ExprNode object;
+        private final Token name;
+
+        Get(ExprNode object, Token name) {
+            this.object = adopt(object);
+            this.name = name;
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            Object receiver = object.execute(frame);
+            if (!(receiver instanceof LoxInstance))
+                throw new RuntimeError(name, "Only instances have properties.");
+            LoxInstance instance = (LoxInstance) receiver;
+
+            Object field = instance.fields.get(name.lexeme);
+            if (field != null || instance.fields.containsKey(name.lexeme))
+                return field;
+            LoxFunction method = instance.klass.findMethod(name.lexeme);
+            if (method != null)
+                return method.bind(instance);
+            throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            object = (ExprNode) newChild;
+        }
+    }
+
+    static final class Set extends ExprNode {
+        private ExprNode object;
+        private final Token name;
+        private ExprNode value;
+
+        Set(ExprNode object, Token name, ExprNode value) {
+            this.object = adopt(object);
+            this.name = name;
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            Object receiver = object.execute(frame);
+            if (!(receiver instanceof LoxInstance))
+                throw new RuntimeError(name, "Only instances have fields.");
+            Object result = value.execute(frame);
+            ((LoxInstance) receiver).fields.put(name.lexeme, result);
+            return result;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (object == oldChild)
+                object = (ExprNode) newChild;
+            else
+                value = (ExprNode) newChild;
+        }
+    }
+
+    // super.method，superclass 与 receiver 分别读取 super 和 this 变量
+    static final class SuperGet extends ExprNode {
+        private ExprNode superclass;
+        private ExprNode receiver;
+        private final Token method;
+
+        SuperGet(ExprNode superclass, ExprNode receiver, Token method) {
+            this.superclass = adopt(superclass);
+            this.receiver = adopt(receiver);
+            this.method = method;
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            LoxFunction function = findSuperMethod((LoxClass) superclass.execute(frame), method);
+            return function.bind((LoxInstance) receiver.execute(frame));
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (superclass == oldChild)
+                superclass = (ExprNode) newChild;
+            else
+                receiver = (ExprNode) newChild;
+        }
+    }
+
+    // super.method(arguments)，同样不创建绑定方法
+    static final class SuperInvoke extends ExprNode {
+        private ExprNode superclass;
+        private ExprNode receiver;
+        private final Token method;
+        private final ExprNode[] arguments;
+        private final Token paren;
+
+        SuperInvoke(ExprNode superclass, ExprNode receiver, Token method, ExprNode[] arguments, Token paren) {
+            this.superclass = adopt(superclass);
+            this.receiver = adopt(receiver);
+            this.method = method;
+            this.arguments = adopt(arguments);
+            this.paren = paren;
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            LoxFunction function = findSuperMethod((LoxClass) superclass.execute(frame), method);
+            Object instance = receiver.execute(frame);
+            Object[] values = executeArguments(arguments, frame);
+            checkArity(function.arity(), values.length, paren);
+            return function.invoke(instance, values);
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (superclass == oldChild)
+                superclass = (ExprNode) newChild;
+            else if (receiver == oldChild)
+                receiver = (ExprNode) newChild;
+            else
+                replaceIn(arguments, oldChild, newChild);
+        }
+    }
+
+    static LoxFunction findSuperMethod(LoxClass superclass, Token method) {
+        LoxFunction function = superclass.findMethod(method.lexeme);
+        if (function == null)
+            throw new RuntimeError(method, "Undefined property '" + method.lexeme + "'.");
+        return function;
+    }
+
+    // 创建闭包，从当前帧中取出需要捕获的 Cell
+    static final class CreateClosure extends ExprNode {
+        private final FunctionDefinition definition;
+        private final int[] captureSlots;
+
+        CreateClosure(FunctionDefinition definition, int[] captureSlots) {
+            this.definition = definition;
+            this.captureSlots = captureSlots;
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            return new LoxFunction(definition, captureCells(captureSlots, frame), null);
+        }
+    }
+
+    static Cell[] captureCells(int[] captureSlots, Object[] frame) {
+        Cell[] cells = new Cell[captureSlots.length];
+        for (int i = 0; i < captureSlots.length; i++) {
+            cells[i] = (Cell) frame[captureSlots[i]];
+        }
+        return cells;
+    }
+
+    /*
+     * 创建类
+     * 有超类时先把超类写入 super 变量的槽位，方法创建时才能捕获到它
+     */
+    static final class CreateClass extends ExprNode {
+        private final String name;
+        private ExprNode superclass;
+        private final Token superclassName;
+        private final int superSlot;
+        private final boolean superCaptured;
+        private final String[] methodNames;
+        private final FunctionDefinition[] methods;
+        private final int[][] methodCaptureSlots;
+
+        CreateClass(String name, ExprNode superclass, Token superclassName, int superSlot, boolean superCaptured,
+                String[] methodNames, FunctionDefinition[] methods, int[][] methodCaptureSlots) {
+            this.name = name;
+            this.superclass = adopt(superclass);
+            this.superclassName = superclassName;
+            this.superSlot = superSlot;
+            this.superCaptured = superCaptured;
+            this.methodNames = methodNames;
+            this.methods = methods;
+            this.methodCaptureSlots = methodCaptureSlots;
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            LoxClass parent = null;
+            if (superclass != null) {
+                Object value = superclass.execute(frame);
+                if (!(value instanceof LoxClass))
+                    throw new RuntimeError(superclassName, "Superclass must be a class.");
+                parent = (LoxClass) value;
+                frame[superSlot] = superCaptured ? new Cell(parent) : parent;
+            }
+
+            Map<String, LoxFunction> table = new IdentityHashMap<>();
+            for (int i = 0; i < methods.length; i++) {
+                table.put(methodNames[i],
+                        new LoxFunction(methods[i], captureCells(methodCaptureSlots[i], frame), null));
+            }
+            return new LoxClass(name, parent, table);
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            superclass = (ExprNode) newChild;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.craftinginterpreters.jlox.nodes;
+
+/*
+ * 函数的静态部分，由同一声明创建的所有闭包共享
+ *
+ * 每次调用分配一个定长的帧，槽位由 ScopeAnalyzer 分配：
+ * 方法的 0 号槽位是 this，其后依次是形参、捕获的外部变量和函数体中的局部变量。
+ * 脚本顶层代码也是一个没有形参的函数定义。
+ */
+final class FunctionDefinition extends Node {
+    final String name;
+    final int arity;
+    final int frameSize;
+    final boolean isInitializer;
+
+    // this 所在槽位，非方法为 -1
+    final int thisSlot;
+    final boolean thisCaptured;
+    final int[] paramSlots;
+    final boolean[] paramCaptured;
+    // 捕获的 Cell 在本函数帧中的槽位，与 LoxFunction.cells 一一对应
+    final int[] captureSlots;
+
+    private StmtNode[] body;
+
+    FunctionDefinition(String name, int frameSize, boolean isInitializer,
+            int thisSlot, boolean thisCaptured,
+            int[] paramSlots, boolean[] paramCaptured, int[] captureSlots) {
+        this.name = name;
+        this.arity = paramSlots.length;
+        this.frameSize = frameSize;
+        this.isInitializer = isInitializer;
+        this.thisSlot = thisSlot;
+        this.thisCaptured = thisCaptured;
+        this.paramSlots = paramSlots;
+        this.paramCaptured = paramCaptured;
+        this.captureSlots = captureSlots;
+    }
+
+    // 函数体在定义之后才构建，使递归引用的函数能先拿到定义
+    void setBody(StmtNode[] body) {
+        this.body = adopt(body);
+    }
+
+    Object[] newFrame(Cell[] cells, Object receiver, Object[] arguments) {
+        Object[] frame = new Object[frameSize];
+        for (int i = 0; i < captureSlots.length; i++) {
+            frame[captureSlots[i]] = cells[i];
+        }
+        if (thisSlot >= 0)
+            frame[thisSlot] = thisCaptured ? new Cell(receiver) : receiver;
+        for (int i = 0; i < paramSlots.length; i++) {
+            frame[paramSlots[i]] = paramCaptured[i] ? new Cell(arguments[i]) : arguments[i];
+        }
+        return frame;
+    }
+
+    // 执行函数体，返回 return 语句的值，没有执行 return 时返回 nil
+    Object execute(Object[] frame) {
+        for (StmtNode stmt : body) {
+            Object result = stmt.execute(frame);
+            if (result != null)
+                return result == StmtNode.RETURN_NIL ? null : result;
+        }
+        return null;
+    }
+
+    @Override
+    void replaceChild(Node oldChild, Node newChild) {
+        for (int i = 0; i < body.length; i++) {
+            if (body[i] == oldChild)
+                body[i] = (StmtNode) newChild;
+        }
+    }
+}
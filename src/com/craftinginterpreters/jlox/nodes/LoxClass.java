@@ -0,0 +1,46 @@
+package com.craftinginterpreters.jlox.nodes;
+
+import java.util.Map;
+
+final class LoxClass implements LoxCallable {
+    final String name;
+    final LoxClass superclass;
+    private final Map<String, LoxFunction> methods;
+    // 构造函数 init，类创建后不再改变
+    private final LoxFunction initializer;
+
+    LoxClass(String name, LoxClass superclass, Map<String, LoxFunction> methods) {
+        this.name = name;
+        this.superclass = superclass;
+        this.methods = methods;
+        this.initializer = findMethod("init");
+    }
+
+    // 优先返回类自身的方法，其次返回超类的方法
+    LoxFunction findMethod(String name) {
+        LoxFunction method = methods.get(name);
+        if (method != null)
+            return method;
+        if (superclass != null)
+            return superclass.findMethod(name);
+        return null;
+    }
+
+    @Override
+    public int arity() {
+        return initializer == null ? 0 : initializer.arity();
+    }
+
+    @Override
+    public Object call(Object[] arguments) {
+        LoxInstance instance = new LoxInstance(this);
+        if (initializer != null)
+            initializer.invoke(instance, arguments);
+        return instance;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,48 @@
+package com.craftinginterpreters.jlox.nodes;
+
+/*
+ * 运行时的函数对象：函数定义加上创建时捕获的 Cell
+ *
+ * 方法以未绑定的形式保存在类中，receiver 为 null；
+ * 只有当方法作为值被取出时才绑定 receiver。
+ */
+final class LoxFunction implements LoxCallable {
+    final FunctionDefinition definition;
+    private final Cell[] cells;
+    private final Object receiver;
+
+    LoxFunction(FunctionDefinition definition, Cell[] cells, Object receiver) {
+        this.definition = definition;
+        this.cells = cells;
+        this.receiver = receiver;
+    }
+
+    LoxFunction bind(LoxInstance instance) {
+        return new LoxFunction(definition, cells, instance);
+    }
+
+    @Override
+    public int arity() {
+        return definition.arity;
+    }
+
+    @Override
+    public Object call(Object[] arguments) {
+        return invoke(receiver, arguments);
+    }
+
+    // 以 receiver 作为 this 调用函数，方法调用时不必先创建绑定方法
+    Object invoke(Object receiver, Object[] arguments) {
+        Object[] frame = definition.newFrame(cells, receiver, arguments);
+        Object result = definition.execute(frame);
+        // 初始化函数总是返回 this
+        if (definition.isInitializer)
+            return receiver;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + definition.name + ">";
+    }
+}
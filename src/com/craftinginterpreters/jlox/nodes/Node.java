@@ -0,0 +1,66 @@
+package com.craftinginterpreters.jlox.nodes;
+
+/*
+ * 可执行节点树的基类
+ *
+ * 节点记录自己的父节点，运行时可以用 replace 把自己替换为更特化的节点，
+ * 父节点此后直接调用新节点。这要求每个含有可替换子节点的节点实现 replaceChild。
+ */
+abstract class Node {
+    private Node parent;
+
+    // 设置子节点的父节点
+    protected final <T extends Node> T adopt(T child) {
+        if (child != null)
+            ((Node) child).parent = this;
+        return child;
+    }
+
+    protected final <T extends Node> T[] adopt(T[] children) {
+        for (T child : children) {
+            adopt(child);
+        }
+        return children;
+    }
+
+    // 在父节点中用 newNode 替换自身
+    protected final <T extends Node> T replace(T newNode) {
+        parent.replaceChild(this, newNode);
+        ((Node) newNode).parent = parent;
+        return newNode;
+    }
+
+    void replaceChild(Node oldChild, Node newChild) {
+        throw new IllegalStateException(getClass().getSimpleName() + " has no replaceable child.");
+    }
+
+    // false 和 nil 是假，其他都是真
+    static boolean isTruthy(Object object) {
+        if (object == null)
+            return false;
+        if (object instanceof Boolean)
+            return (boolean) object;
+        return true;
+    }
+
+    static boolean isEqual(Object a, Object b) {
+        if (a == null && b == null)
+            return true;
+        if (a == null)
+            return false;
+        return a.equals(b);
+    }
+
+    static String stringify(Object object) {
+        if (object == null)
+            return "nil";
+
+        if (object instanceof Double) {
+            String text = object.toString();
+            if (text.endsWith(".0"))
+                text = text.substring(0, text.length() - 2);
+            return text;
+        }
+        return object.toString();
+    }
+}
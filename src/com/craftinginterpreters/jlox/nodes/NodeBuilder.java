@@ -0,0 +1,358 @@
+package com.craftinginterpreters.jlox.nodes;
+
+import java.util.List;
+import java.util.Map;
+
+import com.craftinginterpreters.jlox.Desugar;
+import com.craftinginterpreters.jlox.Expr;
+import com.craftinginterpreters.jlox.Stmt;
+import com.craftinginterpreters.jlox.Token;
+import com.craftinginterpreters.jlox.TokenType;
+
+/*
+ * 根据 ScopeAnalyzer 的结果把语法树转换为节点树
+ *
+ * 全局变量在构建时就绑定到全局 Cell，运行时不再按名字查找。
+ */
+final class NodeBuilder implements Expr.Visitor<ExprNode>, Stmt.Visitor<StmtNode> {
+    private final ScopeAnalyzer analyzer;
+    private final Map<String, Cell> globals;
+
+    NodeBuilder(ScopeAnalyzer analyzer, Map<String, Cell> globals) {
+        this.analyzer = analyzer;
+        this.globals = globals;
+    }
+
+    // 顶层代码作为一个没有形参的函数
+    FunctionDefinition buildScript(List<Stmt> statements) {
+        FunctionDefinition script = new FunctionDefinition("script", analyzer.script.frameSize, false,
+                -1, false, new int[0], new boolean[0], new int[0]);
+        script.setBody(build(statements));
+        return script;
+    }
+
+    private StmtNode[] build(List<Stmt> statements) {
+        StmtNode[] nodes = new StmtNode[statements.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = statements.get(i).accept(this);
+        }
+        return nodes;
+    }
+
+    private ExprNode build(Expr expr) {
+        return expr == null ? null : expr.accept(this);
+    }
+
+    private ExprNode[] buildArguments(List<Expr> exprs) {
+        ExprNode[] nodes = new ExprNode[exprs.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = exprs.get(i).accept(this);
+        }
+        return nodes;
+    }
+
+    private Cell globalCell(String name) {
+        return globals.computeIfAbsent(name, key -> new Cell(Cell.UNDEFINED));
+    }
+
+    private StmtNode define(Token name, ExprNode value) {
+        ScopeAnalyzer.Variable variable = analyzer.declarations.get(name);
+        if (variable == null)
+            return new StmtNode.DefineGlobal(globalCell(name.lexeme), value);
+        if (variable.captured)
+            return new StmtNode.DefineCell(variable.slot, value);
+        return new StmtNode.DefineLocal(variable.slot, value);
+    }
+
+    private ExprNode read(Expr expr, Token name) {
+        return read(analyzer.accesses.get(expr), name);
+    }
+
+    private ExprNode read(ScopeAnalyzer.Access access, Token name) {
+        if (access == null)
+            return new ExprNode.ReadGlobal(globalCell(name.lexeme), name);
+        if (access.variable.captured)
+            return new ExprNode.ReadCell(access.slot);
+        return new ExprNode.ReadLocal(access.slot);
+    }
+
+    private FunctionDefinition function(Stmt.Function stmt, boolean isInitializer) {
+        ScopeAnalyzer.FunctionScope scope = analyzer.functions.get(stmt);
+
+        int thisSlot = -1;
+        boolean thisCaptured = false;
+        if (scope.thisVariable != null) {
+            thisSlot = scope.thisVariable.slot;
+            thisCaptured = scope.thisVariable.captured;
+        }
+
+        int[] paramSlots = new int[stmt.params.size()];
+        boolean[] paramCaptured = new boolean[paramSlots.length];
+        for (int i = 0; i < paramSlots.length; i++) {
+            ScopeAnalyzer.Variable param = analyzer.declarations.get(stmt.params.get(i));
+            paramSlots[i] = param.slot;
+            paramCaptured[i] = param.captured;
+        }
+
+        int[] captureSlots = new int[scope.captures.size()];
+        int i = 0;
+        for (ScopeAnalyzer.Capture capture : scope.captures.values()) {
+            captureSlots[i++] = capture.slot;
+        }
+
+        FunctionDefinition definition = new FunctionDefinition(stmt.name.lexeme, scope.frameSize, isInitializer,
+                thisSlot, thisCaptured, paramSlots, paramCaptured, captureSlots);
+        definition.setBody(build(stmt.body));
+        return definition;
+    }
+
+    // 创建闭包时从外层帧中取 Cell 的槽位
+    private int[] enclosingSlots(Stmt.Function stmt) {
+        ScopeAnalyzer.FunctionScope scope = analyzer.functions.get(stmt);
+        int[] slots = new int[scope.captures.size()];
+        int i = 0;
+        for (ScopeAnalyzer.Capture capture : scope.captures.values()) {
+            slots[i++] = capture.enclosingSlot;
+        }
+        return slots;
+    }
+
+    @Override
+    public StmtNode visitBlockStmt(Stmt.Block stmt) {
+        return new StmtNode.Block(build(stmt.statements));
+    }
+
+    @Override
+    public StmtNode visitClassStmt(Stmt.Class stmt) {
+        ExprNode superclass = null;
+        Token superclassName = null;
+        int superSlot = -1;
+        boolean superCaptured = false;
+        if (stmt.superclass != null) {
+            superclass = build(stmt.superclass);
+            superclassName = stmt.superclass.name;
+            ScopeAnalyzer.Variable variable = analyzer.superVariables.get(stmt);
+            superSlot = variable.slot;
+            superCaptured = variable.captured;
+        }
+
+        int count = stmt.methods.size();
+        String[] names = new String[count];
+        FunctionDefinition[] methods = new FunctionDefinition[count];
+        int[][] captureSlots = new int[count][];
+        for (int i = 0; i < count; i++) {
+            Stmt.Function method = stmt.methods.get(i);
+            names[i] = method.name.lexeme;
+            methods[i] = function(method, names[i].equals("init"));
+            captureSlots[i] = enclosingSlots(method);
+        }
+
+        return define(stmt.name, new ExprNode.CreateClass(stmt.name.lexeme, superclass, superclassName,
+                superSlot, superCaptured, names, methods, captureSlots));
+    }
+
+    @Override
+    public StmtNode visitExpressionStmt(Stmt.Expression stmt) {
+        return new StmtNode.Expression(build(stmt.expression));
+    }
+
+    @Override
+    public StmtNode visitFunctionStmt(Stmt.Function stmt) {
+        return define(stmt.name, new ExprNode.CreateClosure(function(stmt, false), enclosingSlots(stmt)));
+    }
+
+    @Override
+    public StmtNode visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) stmt.value;
+            return new Superinstruction.ReturnBinary(binary.operator, build(binary.left), build(binary.right));
+        }
+        return new StmtNode.Return(build(stmt.value));
+    }
+
+    @Override
+    public StmtNode visitIfStmt(Stmt.If stmt) {
+        StmtNode elseBranch = stmt.elseBranch == null ? null : stmt.elseBranch.accept(this);
+        return new StmtNode.If(build(stmt.condition), stmt.thenBranch.accept(this), elseBranch);
+    }
+
+    // for 语句展开为 while 后编译
+    @Override
+    public StmtNode visitForStmt(Stmt.For stmt) {
+        return Desugar.forLoop(stmt).accept(this);
+    }
+
+    @Override
+    public StmtNode visitWhileStmt(Stmt.While stmt) {
+        return new StmtNode.While(build(stmt.condition), stmt.body.accept(this));
+    }
+
+    @Override
+    public StmtNode visitPrintStmt(Stmt.Print stmt) {
+        return new StmtNode.Print(build(stmt.expression));
+    }
+
+    @Override
+    public StmtNode visitVarStmt(Stmt.Var stmt) {
+        return define(stmt.name, build(stmt.initializer));
+    }
+
+    @Override
+    public ExprNode visitAssignExpr(Expr.Assign expr) {
+        ScopeAnalyzer.Access access = analyzer.accesses.get(expr);
+        // x = x + k 与 x = x - k
+        if (isLocal(access) && expr.value instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr.value;
+            TokenType type = binary.operator.type;
+            if ((type == TokenType.PLUS || type == TokenType.MINUS) && isNumber(binary.right)
+                    && binary.left instanceof Expr.Variable
+                    && sameVariable(access, analyzer.accesses.get(binary.left))) {
+                double delta = (double) ((Expr.Literal) binary.right).value;
+                return new Superinstruction.IncrementLocal(access.slot, binary.operator,
+                        type == TokenType.PLUS ? delta : -delta);
+            }
+        }
+
+        ExprNode value = build(expr.value);
+        if (access == null)
+            return new ExprNode.WriteGlobal(globalCell(expr.name.lexeme), expr.name, value);
+        if (access.variable.captured)
+            return new ExprNode.WriteCell(access.slot, value);
+        return new ExprNode.WriteLocal(access.slot, value);
+    }
+
+    @Override
+    public ExprNode visitBinaryExpr(Expr.Binary expr) {
+        // 局部变量与局部变量或数字常量比较
+        if (isComparison(expr.operator.type) && expr.left instanceof Expr.Variable) {
+            ScopeAnalyzer.Access left = analyzer.accesses.get(expr.left);
+            if (isLocal(left) && isNumber(expr.right))
+                return new Superinstruction.CompareLocalConstant(expr.operator, left.slot,
+                        (double) ((Expr.Literal) expr.right).value);
+            if (isLocal(left) && expr.right instanceof Expr.Variable) {
+                ScopeAnalyzer.Access right = analyzer.accesses.get(expr.right);
+                if (isLocal(right))
+                    return new Superinstruction.CompareLocals(expr.operator, left.slot, right.slot);
+            }
+        }
+        return BinaryNode.create(expr.operator, build(expr.left), build(expr.right));
+    }
+
+    // 未被捕获的局部变量，值直接存放在帧槽位中
+    private static boolean isLocal(ScopeAnalyzer.Access access) {
+        return access != null && !access.variable.captured;
+    }
+
+    private static boolean sameVariable(ScopeAnalyzer.Access a, ScopeAnalyzer.Access b) {
+        return a != null && b != null && a.variable == b.variable;
+    }
+
+    private static boolean isNumber(Expr expr) {
+        return expr instanceof Expr.Literal && ((Expr.Literal) expr).value instanceof Double;
+    }
+
+    private static boolean isComparison(TokenType type) {
+        return type == TokenType.LESS || type == TokenType.LESS_EQUAL
+                || type == TokenType.GREATER || type == TokenType.GREATER_EQUAL;
+    }
+
+    private static boolean isArithmetic(TokenType type) {
+        return type == TokenType.PLUS || type == TokenType.MINUS
+                || type == TokenType.STAR || type == TokenType.SLASH;
+    }
+
+    // 两个表达式读取的是同一个变量或同一个 this，读取没有副作用
+    private boolean sameReceiver(Expr a, Expr b) {
+        if (a instanceof Expr.This && b instanceof Expr.This)
+            return sameVariable(analyzer.accesses.get(a), analyzer.accesses.get(b));
+        if (a instanceof Expr.Variable && b instanceof Expr.Variable) {
+            ScopeAnalyzer.Access access = analyzer.accesses.get(a);
+            if (access == null)
+                return analyzer.accesses.get(b) == null
+                        && ((Expr.Variable) a).name.lexeme.equals(((Expr.Variable) b).name.lexeme);
+            return sameVariable(access, analyzer.accesses.get(b));
+        }
+        return false;
+    }
+
+    @Override
+    public ExprNode visitCallExpr(Expr.Call expr) {
+        ExprNode[] arguments = buildArguments(expr.arguments);
+        if (expr.callee instanceof Expr.Get) {
+            Expr.Get get = (Expr.Get) expr.callee;
+            return new ExprNode.Invoke(build(get.object), get.name, arguments, expr.paren);
+        }
+        if (expr.callee instanceof Expr.Super) {
+            Expr.Super sup = (Expr.Super) expr.callee;
+            return new ExprNode.SuperInvoke(read(sup, sup.keyword),
+                    read(analyzer.superReceivers.get(sup), sup.keyword), sup.method, arguments, expr.paren);
+        }
+        return new ExprNode.Call(build(expr.callee), arguments, expr.paren);
+    }
+
+    // 内联调用按原来的调用执行
+    @Override
+    public ExprNode visitInlineExpr(Expr.Inline expr) {
+        return visitCallExpr(expr.call);
+    }
+
+    @Override
+    public ExprNode visitGetExpr(Expr.Get expr) {
+        return new ExprNode.Get(build(expr.object), expr.name);
+    }
+
+    @Override
+    public ExprNode visitSetExpr(Expr.Set expr) {
+        // obj.field = obj.field op value
+        if (expr.value instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr.value;
+            if (isArithmetic(binary.operator.type) && binary.left instanceof Expr.Get) {
+                Expr.Get get = (Expr.Get) binary.left;
+                if (get.name.lexeme.equals(expr.name.lexeme) && sameReceiver(expr.object, get.object))
+                    return new Superinstruction.UpdateField(build(expr.object), expr.name, binary.operator,
+                            build(binary.right));
+            }
+        }
+        return new ExprNode.Set(build(expr.object), expr.name, build(expr.value));
+    }
+
+    @Override
+    public ExprNode visitThisExpr(Expr.This expr) {
+        return read(expr, expr.keyword);
+    }
+
+    @Override
+    public ExprNode visitSuperExpr(Expr.Super expr) {
+        return new ExprNode.SuperGet(read(expr, expr.keyword),
+                read(analyzer.superReceivers.get(expr), expr.keyword), expr.method);
+    }
+
+    @Override
+    public ExprNode visitGroupingExpr(Expr.Grouping expr) {
+        return build(expr.expression);
+    }
+
+    @Override
+    public ExprNode visitLiteralExpr(Expr.Literal expr) {
+        return new ExprNode.Literal(expr.value);
+    }
+
+    @Override
+    public ExprNode visitLogicalExpr(Expr.Logical expr) {
+        if (expr.operator.type == TokenType.OR)
+            return new ExprNode.Or(build(expr.left), build(expr.right));
+        return new ExprNode.And(build(expr.left), build(expr.right));
+    }
+
+    @Override
+    public ExprNode visitUnaryExpr(Expr.Unary expr) {
+        if (expr.operator.type == TokenType.MINUS)
+            return new ExprNode.Negate(expr.operator, build(expr.right));
+        return new ExprNode.Not(build(expr.right));
+    }
+
+    @Override
+    public ExprNode visitVariableExpr(Expr.Variable expr) {
+        return read(expr, expr.name);
+    }
+}
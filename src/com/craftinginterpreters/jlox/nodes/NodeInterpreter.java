@@ -0,0 +1,34 @@
+package com.craftinginterpreters.jlox.nodes;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.craftinginterpreters.jlox.JLox;
+import com.craftinginterpreters.jlox.RuntimeError;
+import com.craftinginterpreters.jlox.Stmt;
+
+/*
+ * 自特化节点树执行引擎
+ *
+ * 语法树先经 ScopeAnalyzer 分配槽位，再由 NodeBuilder 转换为可执行的节点树。
+ * 节点在运行中根据观察到的操作数类型把自身改写为特化版本，
+ * 同一段代码再次执行时直接走特化后的路径。
+ * 节点在构建时已链接好子节点、槽位和按运算符选定的运算，
+ * 执行只是节点之间的直接虚调用，不经过访问者的双重分派，也不再判断运算符的类型。
+ */
+public class NodeInterpreter {
+    // 全局变量在多次解释（如 REPL 逐行输入）之间保留
+    private final Map<String, Cell> globals = new IdentityHashMap<>();
+
+    public void interpret(List<Stmt> statements) {
+        ScopeAnalyzer analyzer = new ScopeAnalyzer();
+        analyzer.analyze(statements);
+        FunctionDefinition script = new NodeBuilder(analyzer, globals).buildScript(statements);
+        try {
+            script.execute(new Object[script.frameSize]);
+        } catch (RuntimeError error) {
+            JLox.runtimeError(error);
+        }
+    }
+}
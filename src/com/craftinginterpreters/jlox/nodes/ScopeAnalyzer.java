@@ -0,0 +1,344 @@
+package com.craftinginterpreters.jlox.nodes;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.craftinginterpreters.jlox.Desugar;
+import com.craftinginterpreters.jlox.Expr;
+import com.craftinginterpreters.jlox.Stmt;
+import com.craftinginterpreters.jlox.Token;
+
+/*
+ * 构建节点树之前的作用域分析
+ *
+ * 与 Resolver 的作用域规则一致，但以函数为单位分配槽位：
+ * 函数中所有块的局部变量都放在同一个定长帧中，块不再需要自己的环境。
+ * 内层函数引用外层函数的变量时，该变量被标记为捕获，
+ * 沿途每个函数都为它分配一个槽位，调用时从闭包的 Cell 中取得。
+ *
+ * 语义错误已由 Resolver 报告，这里假定程序是合法的。
+ * 分析结果也供 JVM 字节码编译器使用。
+ */
+public final class ScopeAnalyzer implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+    public static final class Variable {
+        public final int slot;
+        // 是否被内层函数引用，被引用的变量在槽位中存放 Cell
+        public boolean captured = false;
+
+        Variable(int slot) {
+            this.slot = slot;
+        }
+    }
+
+    // 变量在访问它的函数帧中的槽位
+    public static final class Access {
+        public final Variable variable;
+        public final int slot;
+
+        Access(Variable variable, int slot) {
+            this.variable = variable;
+            this.slot = slot;
+        }
+    }
+
+    public static final class Capture {
+        // Cell 在外层函数帧中的槽位
+        public final int enclosingSlot;
+        // Cell 在本函数帧中的槽位
+        public final int slot;
+
+        Capture(int enclosingSlot, int slot) {
+            this.enclosingSlot = enclosingSlot;
+            this.slot = slot;
+        }
+    }
+
+    public static final class FunctionScope {
+        final FunctionScope enclosing;
+        final List<Map<String, Variable>> scopes = new ArrayList<>();
+        // 按捕获顺序保存，与闭包中 Cell 的顺序一致
+        public final Map<Variable, Capture> captures = new LinkedHashMap<>();
+        public Variable thisVariable;
+        public int frameSize = 0;
+
+        FunctionScope(FunctionScope enclosing) {
+            this.enclosing = enclosing;
+        }
+
+        Variable lookup(String name) {
+            for (int i = scopes.size() - 1; i >= 0; i--) {
+                Variable variable = scopes.get(i).get(name);
+                if (variable != null)
+                    return variable;
+            }
+            return null;
+        }
+
+        Variable declare(String name) {
+            Variable variable = new Variable(frameSize++);
+            scopes.get(scopes.size() - 1).put(name, variable);
+            return variable;
+        }
+
+        // 同一变量在一个函数中只捕获一次
+        int capture(Variable variable, int enclosingSlot) {
+            Capture capture = captures.get(variable);
+            if (capture == null) {
+                capture = new Capture(enclosingSlot, frameSize++);
+                captures.put(variable, capture);
+            }
+            return capture.slot;
+        }
+    }
+
+    // 变量访问，未记录的是全局变量
+    public final Map<Expr, Access> accesses = new IdentityHashMap<>();
+    // 局部变量的声明，未记录的是全局变量
+    public final Map<Token, Variable> declarations = new IdentityHashMap<>();
+    // super 变量按类声明记录
+    public final Map<Stmt.Class, Variable> superVariables = new IdentityHashMap<>();
+    // super 表达式同时访问 super 与 this，其中 this 的访问单独记录
+    public final Map<Expr.Super, Access> superReceivers = new IdentityHashMap<>();
+    public final Map<Stmt.Function, FunctionScope> functions = new IdentityHashMap<>();
+
+    // 脚本顶层代码
+    public final FunctionScope script = new FunctionScope(null);
+    private FunctionScope current = script;
+
+    public void analyze(List<Stmt> statements) {
+        for (Stmt stmt : statements) {
+            stmt.accept(this);
+        }
+    }
+
+    private void analyze(Expr expr) {
+        expr.accept(this);
+    }
+
+    private boolean isGlobalScope() {
+        return current == script && current.scopes.isEmpty();
+    }
+
+    private void beginScope() {
+        current.scopes.add(new HashMap<>());
+    }
+
+    private void endScope() {
+        current.scopes.remove(current.scopes.size() - 1);
+    }
+
+    private void declare(Token name) {
+        if (isGlobalScope())
+            return;
+        declarations.put(name, current.declare(name.lexeme));
+    }
+
+    private void resolve(Expr expr, String name) {
+        Access access = resolve(current, name);
+        if (access != null)
+            accesses.put(expr, access);
+    }
+
+    private Access resolve(FunctionScope function, String name) {
+        Variable variable = function.lookup(name);
+        if (variable != null)
+            return new Access(variable, variable.slot);
+        if (function.enclosing == null)
+            return null;
+
+        Access outer = resolve(function.enclosing, name);
+        if (outer == null)
+            return null;
+        outer.variable.captured = true;
+        return new Access(outer.variable, function.capture(outer.variable, outer.slot));
+    }
+
+    private void analyzeFunction(Stmt.Function stmt, boolean isMethod) {
+        FunctionScope function = new FunctionScope(current);
+        functions.put(stmt, function);
+        current = function;
+        beginScope();
+        if (isMethod)
+            function.thisVariable = function.declare("this");
+        for (Token param : stmt.params) {
+            declare(param);
+        }
+        analyze(stmt.body);
+        endScope();
+        current = function.enclosing;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope();
+        analyze(stmt.statements);
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        declare(stmt.name);
+        if (stmt.superclass != null) {
+            analyze(stmt.superclass);
+            // super 是外层函数中的隐藏局部变量，方法通过捕获访问它
+            beginScope();
+            superVariables.put(stmt, current.declare("super"));
+        }
+        for (Stmt.Function method : stmt.methods) {
+            analyzeFunction(method, true);
+        }
+        if (stmt.superclass != null)
+            endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        analyze(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        declare(stmt.name);
+        analyzeFunction(stmt, false);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value != null)
+            analyze(stmt.value);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        analyze(stmt.condition);
+        stmt.thenBranch.accept(this);
+        if (stmt.elseBranch != null)
+            stmt.elseBranch.accept(this);
+        return null;
+    }
+
+    // for 语句展开为 while 后编译
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        return Desugar.forLoop(stmt).accept(this);
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        analyze(stmt.condition);
+        stmt.body.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        analyze(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        // 初始化式中的同名变量指向外层，先分析初始化式再声明
+        if (stmt.initializer != null)
+            analyze(stmt.initializer);
+        declare(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        analyze(expr.value);
+        resolve(expr, expr.name.lexeme);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        analyze(expr.left);
+        analyze(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        analyze(expr.callee);
+        for (Expr argument : expr.arguments) {
+            analyze(argument);
+        }
+        return null;
+    }
+
+    // 内联调用按原来的调用执行
+    @Override
+    public Void visitInlineExpr(Expr.Inline expr) {
+        return visitCallExpr(expr.call);
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        analyze(expr.object);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        analyze(expr.object);
+        analyze(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        resolve(expr, "this");
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        resolve(expr, "super");
+        Access receiver = resolve(current, "this");
+        if (receiver != null)
+            superReceivers.put(expr, receiver);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        analyze(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        analyze(expr.left);
+        analyze(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        analyze(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        resolve(expr, expr.name.lexeme);
+        return null;
+    }
+}
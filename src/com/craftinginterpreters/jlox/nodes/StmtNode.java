@@ -0,0 +1,223 @@
+package com.craftinginterpreters.jlox.nodes;
+
+/*
+ * 语句节点
+ *
+ * execute 正常执行完毕返回 null；执行了 return 语句则返回返回值，
+ * 返回值为 nil 时返回 RETURN_NIL，由外层语句逐层原样返回到函数调用处，
+ * 不再借助 Java 的异常机制跳出多层调用栈。
+ */
+abstract class StmtNode extends Node {
+    static final Object RETURN_NIL = new Object();
+
+    abstract Object execute(Object[] frame);
+
+    static final class Expression extends StmtNode {
+        private ExprNode expression;
+
+        Expression(ExprNode expression) {
+            this.expression = adopt(expression);
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            expression.execute(frame);
+            return null;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            expression = (ExprNode) newChild;
+        }
+    }
+
+    static final class Print extends StmtNode {
+        private ExprNode expression;
+
+        Print(ExprNode expression) {
+            this.expression = adopt(expression);
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            System.out.println(stringify(expression.execute(frame)));
+            return null;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            expression = (ExprNode) newChild;
+        }
+    }
+
+    // 块中的局部变量已分配在函数帧中，执行块不需要创建新的环境
+    static final class Block extends StmtNode {
+        private final StmtNode[] statements;
+
+        Block(StmtNode[] statements) {
+            this.statements = adopt(statements);
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            for (StmtNode stmt : statements) {
+                Object result = stmt.execute(frame);
+                if (result != null)
+                    return result;
+            }
+            return null;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            for (int i = 0; i < statements.length; i++) {
+                if (statements[i] == oldChild)
+                    statements[i] = (StmtNode) newChild;
+            }
+        }
+    }
+
+    static final class If extends StmtNode {
+        private ExprNode condition;
+        private final StmtNode thenBranch;
+        private final StmtNode elseBranch;
+
+        If(ExprNode condition, StmtNode thenBranch, StmtNode elseBranch) {
+            this.condition = adopt(condition);
+            this.thenBranch = adopt(thenBranch);
+            this.elseBranch = adopt(elseBranch);
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            if (isTruthy(condition.execute(frame)))
+                return thenBranch.execute(frame);
+            else if (elseBranch != null)
+                return elseBranch.execute(frame);
+            return null;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            condition = (ExprNode) newChild;
+        }
+    }
+
+    static final class While extends StmtNode {
+        private ExprNode condition;
+        private final StmtNode body;
+
+        While(ExprNode condition, StmtNode body) {
+            this.condition = adopt(condition);
+            this.body = adopt(body);
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            while (isTruthy(condition.execute(frame))) {
+                Object result = body.execute(frame);
+                if (result != null)
+                    return result;
+            }
+            return null;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            condition = (ExprNode) newChild;
+        }
+    }
+
+    static final class Return extends StmtNode {
+        private ExprNode value;
+
+        Return(ExprNode value) {
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            if (value == null)
+                return RETURN_NIL;
+            Object result = value.execute(frame);
+            return result == null ? RETURN_NIL : result;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            value = (ExprNode) newChild;
+        }
+    }
+
+    // 定义未被捕获的局部变量，值直接存放在槽位中
+    static final class DefineLocal extends StmtNode {
+        private final int slot;
+        private ExprNode initializer;
+
+        DefineLocal(int slot, ExprNode initializer) {
+            this.slot = slot;
+            this.initializer = adopt(initializer);
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            frame[slot] = initializer == null ? null : initializer.execute(frame);
+            return null;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            initializer = (ExprNode) newChild;
+        }
+    }
+
+    /*
+     * 定义被捕获的局部变量
+     * 每次执行都创建新的 Cell，循环体中的闭包各自捕获本次迭代的变量；
+     * Cell 在求值初始化式之前放入槽位，递归的局部函数能捕获到它自己
+     */
+    static final class DefineCell extends StmtNode {
+        private final int slot;
+        private ExprNode initializer;
+
+        DefineCell(int slot, ExprNode initializer) {
+            this.slot = slot;
+            this.initializer = adopt(initializer);
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            Cell cell = new Cell(null);
+            frame[slot] = cell;
+            if (initializer != null)
+                cell.value = initializer.execute(frame);
+            return null;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            initializer = (ExprNode) newChild;
+        }
+    }
+
+    static final class DefineGlobal extends StmtNode {
+        private final Cell cell;
+        private ExprNode initializer;
+
+        DefineGlobal(Cell cell, ExprNode initializer) {
+            this.cell = cell;
+            this.initializer = adopt(initializer);
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            cell.value = initializer == null ? null : initializer.execute(frame);
+            return null;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            initializer = (ExprNode) newChild;
+        }
+    }
+}
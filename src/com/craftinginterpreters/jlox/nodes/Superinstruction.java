@@ -0,0 +1,233 @@
+package com.craftinginterpreters.jlox.nodes;
+
+import com.craftinginterpreters.jlox.RuntimeError;
+import com.craftinginterpreters.jlox.Token;
+import com.craftinginterpreters.jlox.TokenType;
+
+/*
+ * 超级指令：把常见的语句和表达式形状合并为一个节点
+ *
+ * 循环计数 i = i + 1、与局部变量比较 x < n、字段累加 obj.field = obj.field + k
+ * 以及 return a op b 在程序执行的节点中占了大部分，
+ * NodeBuilder 识别出这些形状后用一个节点完成整个操作，每条源语句只需一次分派。
+ * 合并节点的求值顺序和错误与拆开时的节点相同。
+ */
+final class Superinstruction {
+    private Superinstruction() {
+    }
+
+    /*
+     * 构建节点时按运算符选定的运算，执行时直接调用，不再判断运算符的类型
+     * 语义与 BinaryNode 中对应的节点相同
+     */
+    interface Operation {
+        Object apply(Object l, Object r);
+    }
+
+    interface Comparison {
+        boolean test(double l, double r);
+    }
+
+    static Operation operation(Token operator) {
+        switch (operator.type) {
+            case PLUS:
+                return (l, r) -> {
+                    if (l instanceof Double && r instanceof Double)
+                        return (double) l + (double) r;
+                    if (l instanceof String && r instanceof String)
+                        return (String) l + (String) r;
+                    throw new RuntimeError(operator, "Operands must be numbers or strings");
+                };
+            case MINUS:
+                return (l, r) -> number(operator, l) - number(operator, r);
+            case STAR:
+                return (l, r) -> number(operator, l) * number(operator, r);
+            case SLASH:
+                return (l, r) -> number(operator, l) / number(operator, r);
+            case EQUAL_EQUAL:
+                return (l, r) -> isEqual(l, r);
+            case BANG_EQUAL:
+                return (l, r) -> !isEqual(l, r);
+            default:
+                Comparison comparison = comparison(operator);
+                return (l, r) -> comparison.test(number(operator, l), number(operator, r));
+        }
+    }
+
+    static Comparison comparison(Token operator) {
+        switch (operator.type) {
+            case GREATER:
+                return (l, r) -> l > r;
+            case GREATER_EQUAL:
+                return (l, r) -> l >= r;
+            case LESS:
+                return (l, r) -> l < r;
+            case LESS_EQUAL:
+                return (l, r) -> l <= r;
+            default:
+                throw new IllegalArgumentException("Unexpected comparison operator " + operator.lexeme);
+        }
+    }
+
+    private static double number(Token operator, Object value) {
+        if (value instanceof Double)
+            return (double) value;
+        throw new RuntimeError(operator, "Operand must be a number");
+    }
+
+    private static boolean isEqual(Object a, Object b) {
+        return Node.isEqual(a, b);
+    }
+
+    /*
+     * 局部变量加减常量 x = x + k 或 x = x - k，delta 已带符号
+     * 变量不是数字时按 + 或 - 原来的规则报错
+     */
+    static final class IncrementLocal extends ExprNode {
+        private final int slot;
+        private final Token operator;
+        private final double delta;
+        private final String message;
+
+        IncrementLocal(int slot, Token operator, double delta) {
+            this.slot = slot;
+            this.operator = operator;
+            this.delta = delta;
+            this.message = operator.type == TokenType.PLUS ? "Operands must be numbers or strings"
+                    : "Operand must be a number";
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            return executeDouble(frame);
+        }
+
+        @Override
+        double executeDouble(Object[] frame) {
+            Object value = frame[slot];
+            if (!(value instanceof Double))
+                throw new RuntimeError(operator, message);
+            double result = (double) value + delta;
+            frame[slot] = result;
+            return result;
+        }
+    }
+
+    // 局部变量与局部变量比较，如循环条件 i < n
+    static final class CompareLocals extends ExprNode {
+        private final Token operator;
+        private final Comparison comparison;
+        private final int left;
+        private final int right;
+
+        CompareLocals(Token operator, int left, int right) {
+            this.operator = operator;
+            this.comparison = comparison(operator);
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            Object l = frame[left];
+            Object r = frame[right];
+            if (!(l instanceof Double) || !(r instanceof Double))
+                throw new RuntimeError(operator, "Operand must be a number");
+            return comparison.test((double) l, (double) r);
+        }
+    }
+
+    // 局部变量与数字常量比较，如循环条件 i < 100
+    static final class CompareLocalConstant extends ExprNode {
+        private final Token operator;
+        private final Comparison comparison;
+        private final int slot;
+        private final double constant;
+
+        CompareLocalConstant(Token operator, int slot, double constant) {
+            this.operator = operator;
+            this.comparison = comparison(operator);
+            this.slot = slot;
+            this.constant = constant;
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            Object value = frame[slot];
+            if (!(value instanceof Double))
+                throw new RuntimeError(operator, "Operand must be a number");
+            return comparison.test((double) value, constant);
+        }
+    }
+
+    /*
+     * 字段复合赋值 obj.field = obj.field op value
+     * 两处的 obj 是同一个变量，读取变量没有副作用，只对它求值一次
+     */
+    static final class UpdateField extends ExprNode {
+        private ExprNode object;
+        private final Token name;
+        private final Operation operation;
+        private ExprNode value;
+
+        UpdateField(ExprNode object, Token name, Token operator, ExprNode value) {
+            this.object = adopt(object);
+            this.name = name;
+            this.operation = operation(operator);
+            this.value = adopt(value);
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            Object receiver = object.execute(frame);
+            if (!(receiver instanceof LoxInstance))
+                throw new RuntimeError(name, "Only instances have fields.");
+            LoxInstance instance = (LoxInstance) receiver;
+
+            Object current = instance.fields.get(name.lexeme);
+            if (current == null && !instance.fields.containsKey(name.lexeme)) {
+                LoxFunction method = instance.klass.findMethod(name.lexeme);
+                if (method == null)
+                    throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+                current = method.bind(instance);
+            }
+            Object result = operation.apply(current, value.execute(frame));
+            instance.fields.put(name.lexeme, result);
+            return result;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (object == oldChild)
+                object = (ExprNode) newChild;
+            else
+                value = (ExprNode) newChild;
+        }
+    }
+
+    // return a op b
+    static final class ReturnBinary extends StmtNode {
+        private final Operation operation;
+        private ExprNode left;
+        private ExprNode right;
+
+        ReturnBinary(Token operator, ExprNode left, ExprNode right) {
+            this.operation = operation(operator);
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        @Override
+        Object execute(Object[] frame) {
+            return operation.apply(left.execute(frame), right.execute(frame));
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (left == oldChild)
+                left = (ExprNode) newChild;
+            else
+                right = (ExprNode) newChild;
+        }
+    }
+}
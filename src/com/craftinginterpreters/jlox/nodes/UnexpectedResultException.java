@@ -0,0 +1,17 @@
+package com.craftinginterpreters.jlox.nodes;
+
+/*
+ * 节点按特定类型求值（如 executeDouble）时，实际结果不是该类型
+ *
+ * 结果已经求出，随异常带回给调用者，调用者据此改写节点或报告类型错误，
+ * 不会重复执行子节点。
+ */
+final class UnexpectedResultException extends Exception {
+    final Object result;
+
+    UnexpectedResultException(Object result) {
+        // 只用于控制流，不需要栈轨迹
+        super(null, null, false, false);
+        this.result = result;
+    }
+}
@@ -0,0 +1,649 @@
+package com.craftinginterpreters.jlox.vm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.craftinginterpreters.jlox.Desugar;
+import com.craftinginterpreters.jlox.Expr;
+import com.craftinginterpreters.jlox.JLox;
+import com.craftinginterpreters.jlox.Stmt;
+import com.craftinginterpreters.jlox.Token;
+import com.craftinginterpreters.jlox.TokenType;
+
+/*
+ * 把经过语义分析的语法树编译为字节码
+ *
+ * 局部变量直接对应栈槽，编译期就确定了下标；
+ * 被内层函数引用的外层局部变量编译为 upvalue，
+ * 其余未在局部作用域中找到的变量都是全局变量。
+ * 语义错误已由 Resolver 报告，这里只检查字节码本身的限制。
+ */
+class BytecodeCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+    // 局部变量槽位和 upvalue 下标占两个字节
+    private static final int MAX_SLOTS = 65536;
+    // 常量下标及跳转偏移量占两个字节
+    private static final int MAX_U16 = 65535;
+
+    private enum FunctionType {
+        SCRIPT,
+        FUNCTION,
+        METHOD,
+        INITIALIZER
+    }
+
+    private static class Local {
+        final String name;
+        final int depth;
+        // 被闭包捕获的变量离开作用域时需要 close
+        boolean isCaptured = false;
+
+        Local(String name, int depth) {
+            this.name = name;
+            this.depth = depth;
+        }
+    }
+
+    private static class Upvalue {
+        // 捕获的是外层函数的局部变量，还是外层函数自己的 upvalue
+        final boolean isLocal;
+        final int index;
+
+        Upvalue(boolean isLocal, int index) {
+            this.isLocal = isLocal;
+            this.index = index;
+        }
+    }
+
+    // 正在编译的函数，嵌套函数通过 enclosing 串起来
+    private static class FunctionState {
+        final FunctionState enclosing;
+        final LoxFunction function;
+        final FunctionType type;
+        final List<Local> locals = new ArrayList<>();
+        final List<Upvalue> upvalues = new ArrayList<>();
+        int scopeDepth = 0;
+
+        FunctionState(FunctionState enclosing, LoxFunction function, FunctionType type) {
+            this.enclosing = enclosing;
+            this.function = function;
+            this.type = type;
+            // 0 号栈槽保存被调用的函数本身，方法中则是 this
+            locals.add(new Local(type == FunctionType.METHOD || type == FunctionType.INITIALIZER
+                    ? "this"
+                    : "", 0));
+        }
+    }
+
+    private FunctionState current;
+    // 当前所在的源码行，写入每条指令用于报告运行时错误
+    private int line = 1;
+    private boolean hadError = false;
+
+    // 编译整个脚本，出错时返回 null
+    LoxFunction compile(List<Stmt> statements) {
+        current = new FunctionState(null, new LoxFunction(null), FunctionType.SCRIPT);
+        for (Stmt statement : statements) {
+            compile(statement);
+        }
+        emitReturn();
+        LoxFunction script = current.function;
+        current = null;
+        return hadError ? null : script;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope();
+        for (Stmt statement : stmt.statements) {
+            compile(statement);
+        }
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        line = stmt.name.line;
+        int nameConstant = identifierConstant(stmt.name);
+        emitByte(OpCode.CLASS);
+        emitShort(nameConstant);
+        defineVariable(stmt.name);
+
+        if (stmt.superclass != null) {
+            compile(stmt.superclass);
+            // 超类保存在一个隐藏的局部变量 super 中，供方法以 upvalue 的形式捕获
+            beginScope();
+            addLocal("super", stmt.superclass.name);
+            loadVariable(stmt.name.lexeme);
+            line = stmt.superclass.name.line;
+            emitByte(OpCode.INHERIT);
+        }
+
+        // 添加方法时类需要位于栈顶
+        loadVariable(stmt.name.lexeme);
+        for (Stmt.Function method : stmt.methods) {
+            FunctionType type = method.name.lexeme.equals("init")
+                    ? FunctionType.INITIALIZER
+                    : FunctionType.METHOD;
+            function(method, type);
+            emitByte(OpCode.METHOD);
+            emitShort(identifierConstant(method.name));
+        }
+        emitByte(OpCode.POP);
+
+        if (stmt.superclass != null)
+            endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        compile(stmt.expression);
+        emitByte(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        // 局部函数先占据栈槽，使函数体可以递归引用自身
+        if (current.scopeDepth > 0)
+            addLocal(stmt.name.lexeme, stmt.name);
+        function(stmt, FunctionType.FUNCTION);
+        if (current.scopeDepth == 0)
+            defineGlobal(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        line = stmt.keyword.line;
+        if (stmt.value == null) {
+            emitReturn();
+        } else {
+            compile(stmt.value);
+            emitByte(OpCode.RETURN);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        compile(stmt.condition);
+        int thenJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emitByte(OpCode.POP);
+        compile(stmt.thenBranch);
+
+        int elseJump = emitJump(OpCode.JUMP);
+        patchJump(thenJump);
+        emitByte(OpCode.POP);
+        if (stmt.elseBranch != null)
+            compile(stmt.elseBranch);
+        patchJump(elseJump);
+        return null;
+    }
+
+    // for 语句展开为 while 后编译
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        return Desugar.forLoop(stmt).accept(this);
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        int loopStart = currentChunk().count;
+        compile(stmt.condition);
+        int exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emitByte(OpCode.POP);
+        compile(stmt.body);
+        emitLoop(loopStart);
+
+        patchJump(exitJump);
+        emitByte(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression);
+        emitByte(OpCode.PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer != null) {
+            compile(stmt.initializer);
+        } else {
+            emitByte(OpCode.NIL);
+        }
+        // 初始值留在栈顶，局部变量就是这个栈槽
+        defineVariable(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        compile(expr.value);
+        line = expr.name.line;
+        String name = expr.name.lexeme;
+        int arg = resolveLocal(current, name);
+        if (arg != -1) {
+            emitByte(OpCode.SET_LOCAL);
+            emitShort(arg);
+        } else if ((arg = resolveUpvalue(current, name, expr.name)) != -1) {
+            emitByte(OpCode.SET_UPVALUE);
+            emitShort(arg);
+        } else {
+            emitByte(OpCode.SET_GLOBAL);
+            emitShort(identifierConstant(expr.name));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        compile(expr.left);
+        compile(expr.right);
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case PLUS:
+                emitByte(OpCode.ADD);
+                break;
+            case MINUS:
+                emitByte(OpCode.SUBTRACT);
+                break;
+            case STAR:
+                emitByte(OpCode.MULTIPLY);
+                break;
+            case SLASH:
+                emitByte(OpCode.DIVIDE);
+                break;
+            case GREATER:
+                emitByte(OpCode.GREATER);
+                break;
+            case GREATER_EQUAL:
+                emitByte(OpCode.GREATER_EQUAL);
+                break;
+            case LESS:
+                emitByte(OpCode.LESS);
+                break;
+            case LESS_EQUAL:
+                emitByte(OpCode.LESS_EQUAL);
+                break;
+            case EQUAL_EQUAL:
+                emitByte(OpCode.EQUAL);
+                break;
+            case BANG_EQUAL:
+                emitByte(OpCode.NOT_EQUAL);
+                break;
+            default:
+                break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        // obj.method(args) 与 super.method(args) 直接调用方法，不创建绑定方法
+        if (expr.callee instanceof Expr.Get) {
+            Expr.Get get = (Expr.Get) expr.callee;
+            compile(get.object);
+            compileArguments(expr.arguments);
+            line = get.name.line;
+            emitByte(OpCode.INVOKE);
+            emitShort(identifierConstant(get.name));
+            emitByte(expr.arguments.size());
+            return null;
+        }
+        if (expr.callee instanceof Expr.Super) {
+            Expr.Super superExpr = (Expr.Super) expr.callee;
+            line = superExpr.keyword.line;
+            loadVariable("this");
+            compileArguments(expr.arguments);
+            line = superExpr.keyword.line;
+            loadVariable("super");
+            emitByte(OpCode.SUPER_INVOKE);
+            emitShort(identifierConstant(superExpr.method));
+            emitByte(expr.arguments.size());
+            return null;
+        }
+
+        compile(expr.callee);
+        compileArguments(expr.arguments);
+        line = expr.paren.line;
+        emitBytes(OpCode.CALL, expr.arguments.size());
+        return null;
+    }
+
+    private void compileArguments(List<Expr> arguments) {
+        for (Expr argument : arguments) {
+            compile(argument);
+        }
+    }
+
+    // 内联调用按原来的调用执行
+    @Override
+    public Void visitInlineExpr(Expr.Inline expr) {
+        return visitCallExpr(expr.call);
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        compile(expr.object);
+        line = expr.name.line;
+        emitByte(OpCode.GET_PROPERTY);
+        emitShort(identifierConstant(expr.name));
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        compile(expr.object);
+        compile(expr.value);
+        line = expr.name.line;
+        emitByte(OpCode.SET_PROPERTY);
+        emitShort(identifierConstant(expr.name));
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        line = expr.keyword.line;
+        loadVariable("this");
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        line = expr.keyword.line;
+        loadVariable("this");
+        loadVariable("super");
+        emitByte(OpCode.GET_SUPER);
+        emitShort(identifierConstant(expr.method));
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null)
+            emitByte(OpCode.NIL);
+        else if (expr.value.equals(true))
+            emitByte(OpCode.TRUE);
+        else if (expr.value.equals(false))
+            emitByte(OpCode.FALSE);
+        else
+            emitConstant(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        compile(expr.left);
+        line = expr.operator.line;
+        if (expr.operator.type == TokenType.OR) {
+            // 左侧为真时跳过右侧，结果就是左侧的值
+            int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+            int endJump = emitJump(OpCode.JUMP);
+            patchJump(elseJump);
+            emitByte(OpCode.POP);
+            compile(expr.right);
+            patchJump(endJump);
+        } else {
+            int endJump = emitJump(OpCode.JUMP_IF_FALSE);
+            emitByte(OpCode.POP);
+            compile(expr.right);
+            patchJump(endJump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right);
+        line = expr.operator.line;
+        if (expr.operator.type == TokenType.MINUS)
+            emitByte(OpCode.NEGATE);
+        else
+            emitByte(OpCode.NOT);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        line = expr.name.line;
+        String name = expr.name.lexeme;
+        int arg = resolveLocal(current, name);
+        if (arg != -1) {
+            emitByte(OpCode.GET_LOCAL);
+            emitShort(arg);
+        } else if ((arg = resolveUpvalue(current, name, expr.name)) != -1) {
+            emitByte(OpCode.GET_UPVALUE);
+            emitShort(arg);
+        } else {
+            emitByte(OpCode.GET_GLOBAL);
+            emitShort(identifierConstant(expr.name));
+        }
+        return null;
+    }
+
+    // 编译函数体，并在外层函数中生成创建闭包的指令
+    private void function(Stmt.Function stmt, FunctionType type) {
+        line = stmt.name.line;
+        current = new FunctionState(current, new LoxFunction(stmt.name.lexeme), type);
+        // 形参与函数体共用一个作用域，函数返回时整个栈帧被丢弃，不需要 endScope
+        beginScope();
+        current.function.arity = stmt.params.size();
+        for (Token param : stmt.params) {
+            addLocal(param.lexeme, param);
+        }
+        for (Stmt statement : stmt.body) {
+            compile(statement);
+        }
+        emitReturn();
+
+        FunctionState compiled = current;
+        current = compiled.enclosing;
+        compiled.function.upvalueCount = compiled.upvalues.size();
+
+        line = stmt.name.line;
+        emitByte(OpCode.CLOSURE);
+        emitShort(makeConstant(compiled.function));
+        for (Upvalue upvalue : compiled.upvalues) {
+            emitByte(upvalue.isLocal ? 1 : 0);
+            emitShort(upvalue.index);
+        }
+    }
+
+    // 局部变量留在栈上，全局变量存入全局表
+    private void defineVariable(Token name) {
+        if (current.scopeDepth > 0) {
+            addLocal(name.lexeme, name);
+            return;
+        }
+        defineGlobal(name);
+    }
+
+    private void defineGlobal(Token name) {
+        line = name.line;
+        emitByte(OpCode.DEFINE_GLOBAL);
+        emitShort(identifierConstant(name));
+    }
+
+    // this 与 super 在语法树中没有对应的变量节点，按名字加载
+    private void loadVariable(String name) {
+        int arg = resolveLocal(current, name);
+        if (arg != -1) {
+            emitByte(OpCode.GET_LOCAL);
+            emitShort(arg);
+        } else if ((arg = resolveUpvalue(current, name, null)) != -1) {
+            emitByte(OpCode.GET_UPVALUE);
+            emitShort(arg);
+        } else {
+            emitByte(OpCode.GET_GLOBAL);
+            emitShort(makeConstant(name));
+        }
+    }
+
+    private void addLocal(String name, Token token) {
+        if (current.locals.size() == MAX_SLOTS) {
+            error(token, "Too many local variables in function.");
+            return;
+        }
+        current.locals.add(new Local(name, current.scopeDepth));
+    }
+
+    private int resolveLocal(FunctionState state, String name) {
+        for (int i = state.locals.size() - 1; i >= 0; i--) {
+            if (state.locals.get(i).name.equals(name))
+                return i;
+        }
+        return -1;
+    }
+
+    // 在外层函数中查找变量，并沿途为每一层函数添加 upvalue
+    private int resolveUpvalue(FunctionState state, String name, Token token) {
+        if (state.enclosing == null)
+            return -1;
+
+        int local = resolveLocal(state.enclosing, name);
+        if (local != -1) {
+            state.enclosing.locals.get(local).isCaptured = true;
+            return addUpvalue(state, true, local, token);
+        }
+
+        int upvalue = resolveUpvalue(state.enclosing, name, token);
+        if (upvalue != -1)
+            return addUpvalue(state, false, upvalue, token);
+
+        return -1;
+    }
+
+    private int addUpvalue(FunctionState state, boolean isLocal, int index, Token token) {
+        for (int i = 0; i < state.upvalues.size(); i++) {
+            Upvalue upvalue = state.upvalues.get(i);
+            if (upvalue.isLocal == isLocal && upvalue.index == index)
+                return i;
+        }
+        if (state.upvalues.size() == MAX_SLOTS) {
+            error(token, "Too many closure variables in function.");
+            return 0;
+        }
+        state.upvalues.add(new Upvalue(isLocal, index));
+        return state.upvalues.size() - 1;
+    }
+
+    private void beginScope() {
+        current.scopeDepth++;
+    }
+
+    // 离开作用域时弹出其中的局部变量，被捕获的变量需要 close
+    private void endScope() {
+        current.scopeDepth--;
+        List<Local> locals = current.locals;
+        while (!locals.isEmpty() && locals.get(locals.size() - 1).depth > current.scopeDepth) {
+            if (locals.get(locals.size() - 1).isCaptured)
+                emitByte(OpCode.CLOSE_UPVALUE);
+            else
+                emitByte(OpCode.POP);
+            locals.remove(locals.size() - 1);
+        }
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    private Chunk currentChunk() {
+        return current.function.chunk;
+    }
+
+    private void emitByte(int b) {
+        currentChunk().write(b, line);
+    }
+
+    private void emitBytes(int b1, int b2) {
+        emitByte(b1);
+        emitByte(b2);
+    }
+
+    private void emitShort(int value) {
+        emitByte((value >> 8) & 0xff);
+        emitByte(value & 0xff);
+    }
+
+    // 构造函数隐式返回 this
+    private void emitReturn() {
+        if (current.type == FunctionType.INITIALIZER) {
+            emitByte(OpCode.GET_LOCAL);
+            emitShort(0);
+        } else {
+            emitByte(OpCode.NIL);
+        }
+        emitByte(OpCode.RETURN);
+    }
+
+    private void emitConstant(Object value) {
+        emitByte(OpCode.CONSTANT);
+        emitShort(makeConstant(value));
+    }
+
+    private int identifierConstant(Token name) {
+        return makeConstant(name.lexeme);
+    }
+
+    private int makeConstant(Object value) {
+        int constant = currentChunk().addConstant(value);
+        if (constant > MAX_U16) {
+            error(line, "Too many constants in one chunk.");
+            return 0;
+        }
+        return constant;
+    }
+
+    // 先写入占位的偏移量，目标位置确定后再回填
+    private int emitJump(byte instruction) {
+        emitByte(instruction);
+        emitShort(0xffff);
+        return currentChunk().count - 2;
+    }
+
+    private void patchJump(int offset) {
+        int jump = currentChunk().count - offset - 2;
+        if (jump > MAX_U16)
+            error(line, "Too much code to jump over.");
+        currentChunk().code[offset] = (byte) ((jump >> 8) & 0xff);
+        currentChunk().code[offset + 1] = (byte) (jump & 0xff);
+    }
+
+    private void emitLoop(int loopStart) {
+        emitByte(OpCode.LOOP);
+        int offset = currentChunk().count - loopStart + 2;
+        if (offset > MAX_U16)
+            error(line, "Loop body too large.");
+        emitShort(offset);
+    }
+
+    private void error(Token token, String message) {
+        if (token != null)
+            JLox.error(token, message);
+        else
+            JLox.error(line, message);
+        hadError = true;
+    }
+
+    private void error(int line, String message) {
+        JLox.error(line, message);
+        hadError = true;
+    }
+}
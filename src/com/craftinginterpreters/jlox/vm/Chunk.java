@@ -0,0 +1,40 @@
+package com.craftinginterpreters.jlox.vm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// 一个函数编译后的字节码、对应的源码行号以及常量池
+final class Chunk {
+    byte[] code = new byte[16];
+    // 每个字节对应的源码行号，用于报告运行时错误
+    int[] lines = new int[16];
+    int count = 0;
+
+    Object[] constants = new Object[8];
+    int constantCount = 0;
+    // 相同的数字、字符串常量只保存一份
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+
+    void write(int b, int line) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+            lines = Arrays.copyOf(lines, count * 2);
+        }
+        code[count] = (byte) b;
+        lines[count] = line;
+        count++;
+    }
+
+    int addConstant(Object value) {
+        Integer index = constantIndex.get(value);
+        if (index != null)
+            return index;
+
+        if (constantCount == constants.length)
+            constants = Arrays.copyOf(constants, constantCount * 2);
+        constants[constantCount] = value;
+        constantIndex.put(value, constantCount);
+        return constantCount++;
+    }
+}
@@ -0,0 +1,17 @@
+package com.craftinginterpreters.jlox.vm;
+
+// 作为值取出的方法，调用时 receiver 放入 0 号栈槽作为 this
+final class LoxBoundMethod {
+    final Object receiver;
+    final LoxClosure method;
+
+    LoxBoundMethod(Object receiver, LoxClosure method) {
+        this.receiver = receiver;
+        this.method = method;
+    }
+
+    @Override
+    public String toString() {
+        return method.toString();
+    }
+}
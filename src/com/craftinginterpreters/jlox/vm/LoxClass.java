@@ -0,0 +1,21 @@
+package com.craftinginterpreters.jlox.vm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+final class LoxClass {
+    final String name;
+    // 继承时超类的方法被复制到子类中，查找方法不需要遍历继承链
+    final Map<String, LoxClosure> methods = new HashMap<>();
+    // 构造函数 init
+    LoxClosure initializer;
+
+    LoxClass(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
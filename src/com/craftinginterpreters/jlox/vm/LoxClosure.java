@@ -0,0 +1,17 @@
+package com.craftinginterpreters.jlox.vm;
+
+// 运行时的函数值：函数原型加上它捕获的变量
+final class LoxClosure {
+    final LoxFunction function;
+    final LoxUpvalue[] upvalues;
+
+    LoxClosure(LoxFunction function) {
+        this.function = function;
+        this.upvalues = new LoxUpvalue[function.upvalueCount];
+    }
+
+    @Override
+    public String toString() {
+        return function.toString();
+    }
+}
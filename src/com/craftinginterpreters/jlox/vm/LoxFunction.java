@@ -0,0 +1,20 @@
+package com.craftinginterpreters.jlox.vm;
+
+// 编译期生成的函数原型，运行时由闭包引用
+final class LoxFunction {
+    final String name;
+    final Chunk chunk = new Chunk();
+    int arity = 0;
+    int upvalueCount = 0;
+
+    LoxFunction(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        if (name == null)
+            return "<script>";
+        return "<fn " + name + ">";
+    }
+}
@@ -0,0 +1,18 @@
+package com.craftinginterpreters.jlox.vm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+final class LoxInstance {
+    final LoxClass klass;
+    final Map<String, Object> fields = new HashMap<>();
+
+    LoxInstance(LoxClass klass) {
+        this.klass = klass;
+    }
+
+    @Override
+    public String toString() {
+        return klass.name + " instance";
+    }
+}
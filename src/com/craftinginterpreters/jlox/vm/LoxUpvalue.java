@@ -0,0 +1,19 @@
+package com.craftinginterpreters.jlox.vm;
+
+/*
+ * 闭包捕获的变量
+ * 变量仍在栈上时（open）通过栈槽访问，
+ * 变量所在的作用域结束后（closed）值被搬到 closed 字段中。
+ */
+final class LoxUpvalue {
+    // 栈槽下标，closed 之后为 -1
+    int slot;
+    Object closed;
+    // 按栈槽从高到低串起仍然 open 的 upvalue
+    LoxUpvalue next;
+
+    LoxUpvalue(int slot, LoxUpvalue next) {
+        this.slot = slot;
+        this.next = next;
+    }
+}
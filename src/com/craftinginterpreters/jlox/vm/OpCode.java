@@ -0,0 +1,70 @@
+package com.craftinginterpreters.jlox.vm;
+
+/*
+ * 字节码指令
+ * 每条指令占一个字节，操作数紧随其后：
+ * u8 为一个字节的无符号数，u16 为两个字节的无符号数（大端）
+ */
+final class OpCode {
+    // 常量池中的常量入栈            u16 常量下标
+    static final byte CONSTANT = 0;
+    static final byte NIL = 1;
+    static final byte TRUE = 2;
+    static final byte FALSE = 3;
+    static final byte POP = 4;
+
+    // 局部变量即栈槽                u16 槽位
+    static final byte GET_LOCAL = 5;
+    static final byte SET_LOCAL = 6;
+    // 全局变量按名字查找            u16 变量名常量
+    static final byte GET_GLOBAL = 7;
+    static final byte DEFINE_GLOBAL = 8;
+    static final byte SET_GLOBAL = 9;
+    // 闭包捕获的变量                u16 upvalue 下标
+    static final byte GET_UPVALUE = 10;
+    static final byte SET_UPVALUE = 11;
+
+    // 属性存取                      u16 属性名常量
+    static final byte GET_PROPERTY = 12;
+    static final byte SET_PROPERTY = 13;
+    // 取超类方法并绑定 this          u16 方法名常量
+    static final byte GET_SUPER = 14;
+
+    static final byte EQUAL = 15;
+    static final byte NOT_EQUAL = 16;
+    static final byte GREATER = 17;
+    static final byte GREATER_EQUAL = 18;
+    static final byte LESS = 19;
+    static final byte LESS_EQUAL = 20;
+    static final byte ADD = 21;
+    static final byte SUBTRACT = 22;
+    static final byte MULTIPLY = 23;
+    static final byte DIVIDE = 24;
+    static final byte NOT = 25;
+    static final byte NEGATE = 26;
+
+    static final byte PRINT = 27;
+
+    // 跳转                          u16 偏移量
+    static final byte JUMP = 28;
+    static final byte JUMP_IF_FALSE = 29;
+    static final byte LOOP = 30;
+
+    // 函数调用                      u8 实参数量
+    static final byte CALL = 31;
+    // obj.method(args) 不创建绑定方法直接调用       u16 方法名常量, u8 实参数量
+    static final byte INVOKE = 32;
+    static final byte SUPER_INVOKE = 33;
+    // 创建闭包                      u16 函数常量, 每个 upvalue 再跟 u8 isLocal, u16 下标
+    static final byte CLOSURE = 34;
+    static final byte CLOSE_UPVALUE = 35;
+    static final byte RETURN = 36;
+
+    // 类                            u16 类名/方法名常量
+    static final byte CLASS = 37;
+    static final byte INHERIT = 38;
+    static final byte METHOD = 39;
+
+    private OpCode() {
+    }
+}
@@ -0,0 +1,540 @@
+package com.craftinginterpreters.jlox.vm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.craftinginterpreters.jlox.JLox;
+import com.craftinginterpreters.jlox.Stmt;
+
+/*
+ * 基于栈的字节码虚拟机
+ *
+ * 与树遍历解释器使用相同的值表示（Double、String、Boolean、null），
+ * 运行时错误的提示信息也与解释器保持一致。
+ * 所有 Lox 函数调用都在同一个分发循环中完成，不占用 Java 调用栈。
+ */
+public class VM {
+
+    // 调用栈的最大深度
+    private static final int FRAMES_MAX = 1 << 16;
+
+    private static class CallFrame {
+        LoxClosure closure;
+        // 下一条要执行的指令
+        int ip;
+        // 该函数的 0 号栈槽在值栈中的位置
+        int slots;
+    }
+
+    // 运行时错误，由分发循环捕获后补上行号
+    private static class VMError extends RuntimeException {
+        VMError(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private Object[] stack = new Object[256];
+    private int stackTop = 0;
+    private CallFrame[] frames = new CallFrame[64];
+    private int frameCount = 0;
+    // 仍然指向栈槽的 upvalue，按栈槽从高到低排列
+    private LoxUpvalue openUpvalues = null;
+    private final Map<String, Object> globals = new HashMap<>();
+
+    public void interpret(List<Stmt> statements) {
+        LoxFunction script = new BytecodeCompiler().compile(statements);
+        if (script == null)
+            return;
+
+        LoxClosure closure = new LoxClosure(script);
+        stack[stackTop++] = closure;
+        call(closure, 0);
+        try {
+            run();
+        } catch (VMError error) {
+            resetStack();
+        }
+    }
+
+    private void run() {
+        CallFrame frame = frames[frameCount - 1];
+        byte[] code = frame.closure.function.chunk.code;
+        Object[] constants = frame.closure.function.chunk.constants;
+        int ip = frame.ip;
+        int slots = frame.slots;
+        // 值栈及栈顶放在局部变量中，调用其他方法前后再与字段同步
+        Object[] stack = this.stack;
+        int sp = stackTop;
+
+        try {
+            for (;;) {
+                switch (code[ip++]) {
+                    case OpCode.CONSTANT:
+                        stack[sp++] = constants[readShort(code, ip)];
+                        ip += 2;
+                        break;
+                    case OpCode.NIL:
+                        stack[sp++] = null;
+                        break;
+                    case OpCode.TRUE:
+                        stack[sp++] = true;
+                        break;
+                    case OpCode.FALSE:
+                        stack[sp++] = false;
+                        break;
+                    case OpCode.POP:
+                        sp--;
+                        break;
+
+                    case OpCode.GET_LOCAL:
+                        stack[sp++] = stack[slots + readShort(code, ip)];
+                        ip += 2;
+                        break;
+                    case OpCode.SET_LOCAL:
+                        stack[slots + readShort(code, ip)] = stack[sp - 1];
+                        ip += 2;
+                        break;
+                    case OpCode.GET_GLOBAL: {
+                        String name = (String) constants[readShort(code, ip)];
+                        ip += 2;
+                        Object value = globals.get(name);
+                        if (value == null && !globals.containsKey(name))
+                            throw error("Undefined variable '" + name + "'.");
+                        stack[sp++] = value;
+                        break;
+                    }
+                    case OpCode.DEFINE_GLOBAL: {
+                        String name = (String) constants[readShort(code, ip)];
+                        ip += 2;
+                        globals.put(name, stack[--sp]);
+                        break;
+                    }
+                    case OpCode.SET_GLOBAL: {
+                        String name = (String) constants[readShort(code, ip)];
+                        ip += 2;
+                        if (!globals.containsKey(name))
+                            throw error("Undefined variable '" + name + "'.");
+                        globals.put(name, stack[sp - 1]);
+                        break;
+                    }
+                    case OpCode.GET_UPVALUE: {
+                        LoxUpvalue upvalue = frame.closure.upvalues[readShort(code, ip)];
+                        ip += 2;
+                        stack[sp++] = upvalue.slot >= 0 ? stack[upvalue.slot] : upvalue.closed;
+                        break;
+                    }
+                    case OpCode.SET_UPVALUE: {
+                        LoxUpvalue upvalue = frame.closure.upvalues[readShort(code, ip)];
+                        ip += 2;
+                        if (upvalue.slot >= 0)
+                            stack[upvalue.slot] = stack[sp - 1];
+                        else
+                            upvalue.closed = stack[sp - 1];
+                        break;
+                    }
+
+                    case OpCode.GET_PROPERTY: {
+                        String name = (String) constants[readShort(code, ip)];
+                        ip += 2;
+                        Object object = stack[sp - 1];
+                        if (!(object instanceof LoxInstance))
+                            throw error("Only instances have properties.");
+                        LoxInstance instance = (LoxInstance) object;
+                        Object value = instance.fields.get(name);
+                        if (value != null || instance.fields.containsKey(name)) {
+                            stack[sp - 1] = value;
+                            break;
+                        }
+                        stack[sp - 1] = bindMethod(instance.klass, name, instance);
+                        break;
+                    }
+                    case OpCode.SET_PROPERTY: {
+                        String name = (String) constants[readShort(code, ip)];
+                        ip += 2;
+                        Object object = stack[sp - 2];
+                        if (!(object instanceof LoxInstance))
+                            throw error("Only instances have fields.");
+                        Object value = stack[--sp];
+                        ((LoxInstance) object).fields.put(name, value);
+                        stack[sp - 1] = value;
+                        break;
+                    }
+                    case OpCode.GET_SUPER: {
+                        String name = (String) constants[readShort(code, ip)];
+                        ip += 2;
+                        LoxClass superclass = (LoxClass) stack[--sp];
+                        stack[sp - 1] = bindMethod(superclass, name, stack[sp - 1]);
+                        break;
+                    }
+
+                    case OpCode.EQUAL: {
+                        Object b = stack[--sp];
+                        stack[sp - 1] = isEqual(stack[sp - 1], b);
+                        break;
+                    }
+                    case OpCode.NOT_EQUAL: {
+                        Object b = stack[--sp];
+                        stack[sp - 1] = !isEqual(stack[sp - 1], b);
+                        break;
+                    }
+                    case OpCode.GREATER: {
+                        checkNumberOperands(stack[sp - 2], stack[sp - 1]);
+                        double b = (double) stack[--sp];
+                        stack[sp - 1] = (double) stack[sp - 1] > b;
+                        break;
+                    }
+                    case OpCode.GREATER_EQUAL: {
+                        checkNumberOperands(stack[sp - 2], stack[sp - 1]);
+                        double b = (double) stack[--sp];
+                        stack[sp - 1] = (double) stack[sp - 1] >= b;
+                        break;
+                    }
+                    case OpCode.LESS: {
+                        checkNumberOperands(stack[sp - 2], stack[sp - 1]);
+                        double b = (double) stack[--sp];
+                        stack[sp - 1] = (double) stack[sp - 1] < b;
+                        break;
+                    }
+                    case OpCode.LESS_EQUAL: {
+                        checkNumberOperands(stack[sp - 2], stack[sp - 1]);
+                        double b = (double) stack[--sp];
+                        stack[sp - 1] = (double) stack[sp - 1] <= b;
+                        break;
+                    }
+                    case OpCode.ADD: {
+                        Object b = stack[--sp];
+                        Object a = stack[sp - 1];
+                        if (a instanceof Double && b instanceof Double) {
+                            stack[sp - 1] = (double) a + (double) b;
+                        } else if (a instanceof String && b instanceof String) {
+                            stack[sp - 1] = (String) a + (String) b;
+                        } else {
+                            throw error("Operands must be numbers or strings");
+                        }
+                        break;
+                    }
+                    case OpCode.SUBTRACT: {
+                        checkNumberOperands(stack[sp - 2], stack[sp - 1]);
+                        double b = (double) stack[--sp];
+                        stack[sp - 1] = (double) stack[sp - 1] - b;
+                        break;
+                    }
+                    case OpCode.MULTIPLY: {
+                        checkNumberOperands(stack[sp - 2], stack[sp - 1]);
+                        double b = (double) stack[--sp];
+                        stack[sp - 1] = (double) stack[sp - 1] * b;
+                        break;
+                    }
+                    case OpCode.DIVIDE: {
+                        checkNumberOperands(stack[sp - 2], stack[sp - 1]);
+                        double b = (double) stack[--sp];
+                        stack[sp - 1] = (double) stack[sp - 1] / b;
+                        break;
+                    }
+                    case OpCode.NOT:
+                        stack[sp - 1] = !isTruthy(stack[sp - 1]);
+                        break;
+                    case OpCode.NEGATE:
+                        if (!(stack[sp - 1] instanceof Double))
+                            throw error("Operand must be a number");
+                        stack[sp - 1] = -(double) stack[sp - 1];
+                        break;
+
+                    case OpCode.PRINT:
+                        System.out.println(stringify(stack[--sp]));
+                        break;
+
+                    case OpCode.JUMP:
+                        ip += readShort(code, ip) + 2;
+                        break;
+                    case OpCode.JUMP_IF_FALSE:
+                        if (isTruthy(stack[sp - 1]))
+                            ip += 2;
+                        else
+                            ip += readShort(code, ip) + 2;
+                        break;
+                    case OpCode.LOOP:
+                        ip -= readShort(code, ip) - 2;
+                        break;
+
+                    case OpCode.CALL: {
+                        int argCount = code[ip++] & 0xff;
+                        frame.ip = ip;
+                        stackTop = sp;
+                        callValue(stack[sp - 1 - argCount], argCount);
+                        frame = frames[frameCount - 1];
+                        code = frame.closure.function.chunk.code;
+                        constants = frame.closure.function.chunk.constants;
+                        ip = frame.ip;
+                        slots = frame.slots;
+                        stack = this.stack;
+                        sp = stackTop;
+                        break;
+                    }
+                    case OpCode.INVOKE: {
+                        String name = (String) constants[readShort(code, ip)];
+                        int argCount = code[ip + 2] & 0xff;
+                        ip += 3;
+                        frame.ip = ip;
+                        stackTop = sp;
+                        invoke(name, argCount);
+                        frame = frames[frameCount - 1];
+                        code = frame.closure.function.chunk.code;
+                        constants = frame.closure.function.chunk.constants;
+                        ip = frame.ip;
+                        slots = frame.slots;
+                        stack = this.stack;
+                        sp = stackTop;
+                        break;
+                    }
+                    case OpCode.SUPER_INVOKE: {
+                        String name = (String) constants[readShort(code, ip)];
+                        int argCount = code[ip + 2] & 0xff;
+                        ip += 3;
+                        frame.ip = ip;
+                        LoxClass superclass = (LoxClass) stack[--sp];
+                        stackTop = sp;
+                        invokeFromClass(superclass, name, argCount);
+                        frame = frames[frameCount - 1];
+                        code = frame.closure.function.chunk.code;
+                        constants = frame.closure.function.chunk.constants;
+                        ip = frame.ip;
+                        slots = frame.slots;
+                        stack = this.stack;
+                        sp = stackTop;
+                        break;
+                    }
+                    case OpCode.CLOSURE: {
+                        LoxFunction function = (LoxFunction) constants[readShort(code, ip)];
+                        ip += 2;
+                        LoxClosure closure = new LoxClosure(function);
+                        for (int i = 0; i < closure.upvalues.length; i++) {
+                            boolean isLocal = code[ip++] == 1;
+                            int index = readShort(code, ip);
+                            ip += 2;
+                            closure.upvalues[i] = isLocal
+                                    ? captureUpvalue(slots + index)
+                                    : frame.closure.upvalues[index];
+                        }
+                        stack[sp++] = closure;
+                        break;
+                    }
+                    case OpCode.CLOSE_UPVALUE:
+                        closeUpvalues(sp - 1);
+                        sp--;
+                        break;
+                    case OpCode.RETURN: {
+                        Object result = stack[--sp];
+                        closeUpvalues(slots);
+                        frameCount--;
+                        // 清空被调函数占用的栈槽，避免引用的对象无法回收
+                        Arrays.fill(stack, slots, sp, null);
+                        sp = slots;
+                        if (frameCount == 0) {
+                            stackTop = sp;
+                            return;
+                        }
+
+                        stack[sp++] = result;
+                        frame = frames[frameCount - 1];
+                        code = frame.closure.function.chunk.code;
+                        constants = frame.closure.function.chunk.constants;
+                        ip = frame.ip;
+                        slots = frame.slots;
+                        break;
+                    }
+
+                    case OpCode.CLASS:
+                        stack[sp++] = new LoxClass((String) constants[readShort(code, ip)]);
+                        ip += 2;
+                        break;
+                    case OpCode.INHERIT: {
+                        Object superclass = stack[sp - 2];
+                        if (!(superclass instanceof LoxClass))
+                            throw error("Superclass must be a class.");
+                        LoxClass subclass = (LoxClass) stack[--sp];
+                        // 方法在继承时复制到子类，子类自己的方法随后会覆盖它们
+                        subclass.methods.putAll(((LoxClass) superclass).methods);
+                        subclass.initializer = ((LoxClass) superclass).initializer;
+                        break;
+                    }
+                    case OpCode.METHOD: {
+                        String name = (String) constants[readShort(code, ip)];
+                        ip += 2;
+                        LoxClosure method = (LoxClosure) stack[--sp];
+                        LoxClass klass = (LoxClass) stack[sp - 1];
+                        klass.methods.put(name, method);
+                        if (name.equals("init"))
+                            klass.initializer = method;
+                        break;
+                    }
+
+                    default:
+                        throw new IllegalStateException("Unknown opcode " + code[ip - 1]);
+                }
+            }
+        } catch (VMError error) {
+            // 当前指令的行号
+            JLox.runtimeError(frame.closure.function.chunk.lines[ip - 1], error.getMessage());
+            stackTop = sp;
+            throw error;
+        }
+    }
+
+    private void callValue(Object callee, int argCount) {
+        if (callee instanceof LoxClosure) {
+            call((LoxClosure) callee, argCount);
+            return;
+        }
+        if (callee instanceof LoxBoundMethod) {
+            LoxBoundMethod bound = (LoxBoundMethod) callee;
+            stack[stackTop - 1 - argCount] = bound.receiver;
+            call(bound.method, argCount);
+            return;
+        }
+        if (callee instanceof LoxClass) {
+            LoxClass klass = (LoxClass) callee;
+            // 实例放在被调用者的位置，即构造函数的 0 号栈槽 this
+            stack[stackTop - 1 - argCount] = new LoxInstance(klass);
+            if (klass.initializer != null)
+                call(klass.initializer, argCount);
+            else if (argCount != 0)
+                throw error("Expected 0 arguments but got " + argCount + ".");
+            return;
+        }
+        throw error("Can only call functions and classes");
+    }
+
+    // obj.method(args): 字段优先，否则直接调用类中的方法
+    private void invoke(String name, int argCount) {
+        Object receiver = stack[stackTop - 1 - argCount];
+        if (!(receiver instanceof LoxInstance))
+            throw error("Only instances have properties.");
+
+        LoxInstance instance = (LoxInstance) receiver;
+        Object field = instance.fields.get(name);
+        if (field != null || instance.fields.containsKey(name)) {
+            stack[stackTop - 1 - argCount] = field;
+            callValue(field, argCount);
+            return;
+        }
+        invokeFromClass(instance.klass, name, argCount);
+    }
+
+    private void invokeFromClass(LoxClass klass, String name, int argCount) {
+        LoxClosure method = klass.methods.get(name);
+        if (method == null)
+            throw error("Undefined property '" + name + "'.");
+        call(method, argCount);
+    }
+
+    private LoxBoundMethod bindMethod(LoxClass klass, String name, Object receiver) {
+        LoxClosure method = klass.methods.get(name);
+        if (method == null)
+            throw error("Undefined property '" + name + "'.");
+        return new LoxBoundMethod(receiver, method);
+    }
+
+    private void call(LoxClosure closure, int argCount) {
+        if (argCount != closure.function.arity)
+            throw error("Expected " + closure.function.arity + " arguments but got " + argCount + ".");
+        if (frameCount == FRAMES_MAX)
+            throw error("Stack overflow.");
+
+        if (frameCount == frames.length)
+            frames = Arrays.copyOf(frames, frameCount * 2);
+        CallFrame frame = frames[frameCount];
+        if (frame == null)
+            frame = frames[frameCount] = new CallFrame();
+        frameCount++;
+        frame.closure = closure;
+        frame.ip = 0;
+        frame.slots = stackTop - 1 - argCount;
+
+        // 语句执行前后栈是平衡的，函数运行时的栈深度不会超过它的指令字节数
+        int needed = frame.slots + closure.function.chunk.count + 1;
+        if (needed > stack.length)
+            stack = Arrays.copyOf(stack, Math.max(needed, stack.length * 2));
+    }
+
+    private LoxUpvalue captureUpvalue(int slot) {
+        LoxUpvalue previous = null;
+        LoxUpvalue upvalue = openUpvalues;
+        while (upvalue != null && upvalue.slot > slot) {
+            previous = upvalue;
+            upvalue = upvalue.next;
+        }
+        if (upvalue != null && upvalue.slot == slot)
+            return upvalue;
+
+        LoxUpvalue created = new LoxUpvalue(slot, upvalue);
+        if (previous == null)
+            openUpvalues = created;
+        else
+            previous.next = created;
+        return created;
+    }
+
+    // 栈槽 last 及以上的变量即将出栈，把它们的值搬进 upvalue
+    private void closeUpvalues(int last) {
+        while (openUpvalues != null && openUpvalues.slot >= last) {
+            LoxUpvalue upvalue = openUpvalues;
+            upvalue.closed = stack[upvalue.slot];
+            upvalue.slot = -1;
+            openUpvalues = upvalue.next;
+        }
+    }
+
+    private static int readShort(byte[] code, int ip) {
+        return ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+    }
+
+    private void checkNumberOperands(Object a, Object b) {
+        if (a instanceof Double && b instanceof Double)
+            return;
+        throw error("Operand must be a number");
+    }
+
+    private void resetStack() {
+        Arrays.fill(stack, 0, stackTop, null);
+        stackTop = 0;
+        frameCount = 0;
+        openUpvalues = null;
+    }
+
+    private VMError error(String message) {
+        return new VMError(message);
+    }
+
+    private static boolean isEqual(Object a, Object b) {
+        if (a == null && b == null)
+            return true;
+        if (a == null)
+            return false;
+        return a.equals(b);
+    }
+
+    // false 和 nil 是假，其他都是真
+    private static boolean isTruthy(Object object) {
+        if (object == null)
+            return false;
+        if (object instanceof Boolean)
+            return (boolean) object;
+        return true;
+    }
+
+    private static String stringify(Object object) {
+        if (object == null)
+            return "nil";
+
+        if (object instanceof Double) {
+            String text = object.toString();
+            if (text.endsWith(".0"))
+                text = text.substring(0, text.length() - 2);
+            return text;
+        }
+        return object.toString();
+    }
+}
@@ -22,30 +22,45 @@ public class GenerateAst {
          * 4. Unary（一元表达式）。
          * 5. Variable (变量名)
          * 6. Assign （赋值)
+         *
+         * 每个类型的描述为 "类名 : 字段列表"，
+         * 可选的 "; 字段列表" 部分是语义分析或执行引擎填写的可变字段，不出现在构造函数中，
+         * 如变量在访问处的存放位置 storage 与槽位 slot，
+         * 声明语句中的 slot 为 -1 表示声明的是全局变量，captured 表示变量被闭包捕获，
+         * 全局变量的声明与访问处的 global 为该变量的全局 Cell，
+         * 函数的 captures 为闭包捕获的外层 Cell，cellSlots 为需要放入 Cell 的形参槽位，
+         * 调用的 declaration 为上次通过可调用及实参数量检查的 Lox 函数的声明，同一声明创建的函数不再重复检查，
+         * return 语句的 tailCall 表示返回值是处于尾位置的调用，
+         * 变量声明的 assigned 表示局部变量在声明之后被重新赋值过。
+         * Inline 是优化器内联的全局函数调用，function 为函数声明处的函数名，
+         * 被调用的仍是该声明创建的函数时直接对 body 求值，否则按原来的 call 调用。
+         * for 语句的 counted 表示它是以常量步长 step 递增的计数循环。
          */
         defineAst(outputDir, "Expr", Arrays.asList(
-                "Assign : Token name, Expr value",
+                "Assign : Token name, Expr value ; Storage storage = Storage.GLOBAL, int slot, Cell global",
                 "Binary   : Expr left, Token operator, Expr right",
-                "Call : Expr callee, Token paren, List<Expr> arguments",
-                "Get : Expr object, Token name",
-                "Set : Expr object, Token name, Expr value",
-                "This : Token keyword",
-                "Super : Token keyword, Token method",
+                "Call : Expr callee, Token paren, List<Expr> arguments ; Stmt.Function declaration",
+                "Inline : Expr.Call call, Token function, List<Token> params, Expr body",
+                "Get : Expr object, Token name ; PropertyCache cache",
+                "Set : Expr object, Token name, Expr value ; PropertyCache cache",
+                "This : Token keyword ; Storage storage = Storage.GLOBAL, int slot",
+                "Super : Token keyword, Token method ; Storage storage = Storage.GLOBAL, int slot, Storage thisStorage = Storage.GLOBAL, int thisSlot, int index",
                 "Grouping : Expr expression",
                 "Literal  : Object value",
                 "Logical : Expr left, Token operator, Expr right",
                 "Unary    : Token operator, Expr right",
-                "Variable : Token name"));
+                "Variable : Token name ; Storage storage = Storage.GLOBAL, int slot, Cell global"));
         defineAst(outputDir, "Stmt", Arrays.asList(
                 "Block : List<Stmt> statements",
-                "Class : Token name, Expr.Variable superclass, List<Stmt.Function> methods",
+                "Class : Token name, Expr.Variable superclass, List<Stmt.Function> methods ; int slot = -1, boolean captured, int superSlot = -1, List<Expr.Super> supers, Cell global",
                 "Expression : Expr expression",
-                "Function : Token name, List<Token> params, List<Stmt> body",
-                "Return : Token keyword, Expr value",
+                "Function : Token name, List<Token> params, List<Stmt> body ; int frameSize, int[] captures, int[] cellSlots, int slot = -1, boolean captured, Cell global",
+                "Return : Token keyword, Expr value ; boolean tailCall",
                 "If : Expr condition, Stmt thenBranch, Stmt elseBranch",
                 "While : Expr condition, Stmt body",
+                "For : Stmt initializer, Expr condition, Expr increment, Stmt body ; boolean counted, double step",
                 "Print : Expr expression",
-                "Var : Token name, Expr initializer"));
+                "Var : Token name, Expr initializer ; int slot = -1, boolean captured, boolean assigned, Cell global"));
 
     }
 
@@ -60,7 +75,8 @@ public class GenerateAst {
         writer.println();
         writer.println("import java.util.List;");
         writer.println();
-        writer.println("abstract class " + baseName + " {");
+        // 语法树需要对 jlox.vm 等其他包中的执行引擎可见
+        writer.println("public abstract class " + baseName + " {");
 
         /*
          * 访问者模式（Visitor Pattern），它可以使得程序在处理不同类型的对象时更加灵活和可扩展。
@@ -74,13 +90,14 @@ public class GenerateAst {
         defineVisitor(writer, baseName, types);
         // 实现抽象访问者接口
         writer.println();
-        writer.println("    abstract <R> R accept(Visitor<R> visitor);");
+        writer.println("    public abstract <R> R accept(Visitor<R> visitor);");
 
         // 生成表达式类型
         for (String type : types) {
             String className = type.split(":")[0].trim();
-            String fields = type.split(":")[1].trim();
-            defineType(writer, baseName, className, fields);
+            String[] fields = type.split(":")[1].split(";");
+            String runtimeFields = fields.length > 1 ? fields[1].trim() : null;
+            defineType(writer, baseName, className, fields[0].trim(), runtimeFields);
 
         }
 
@@ -89,12 +106,12 @@ public class GenerateAst {
     }
 
     private static void defineType(PrintWriter writer, String baseName,
-            String className, String fieldList) {
+            String className, String fieldList, String runtimeFieldList) {
         // 定义表达式类型
         // 与上一个类型空一行
         writer.println();
 
-        writer.println("    static class " + className + " extends " + baseName + " {");
+        writer.println("    public static class " + className + " extends " + baseName + " {");
         // 表达式类构造函数
         writer.println("        " + className + "(" + fieldList + ") {");
         // Store parameters in fields.
@@ -108,13 +125,20 @@ public class GenerateAst {
         // 定义私有变量
         writer.println();
         for (String field : fields) {
-            writer.println("        final " + field + ";");
+            writer.println("        public final " + field + ";");
+        }
+        // 运行时状态仅对本包中的执行引擎可见
+        if (runtimeFieldList != null) {
+            writer.println();
+            for (String field : runtimeFieldList.split(", ")) {
+                writer.println("        " + field + ";");
+            }
         }
 
         // 实现访问者接口
         writer.println();
         writer.println("        @Override");
-        writer.println("        <R> R accept(Visitor<R> visitor) {");
+        writer.println("        public <R> R accept(Visitor<R> visitor) {");
         writer.println("            return visitor.visit" + className + baseName + "(this);");
         writer.println("        }");
 
@@ -127,7 +151,7 @@ public class GenerateAst {
             PrintWriter writer, String baseName, List<String> types) {
         // 定义表达式类型接口
         writer.println();
-        writer.println("    interface Visitor<R> {");
+        writer.println("    public interface Visitor<R> {");
 
         for (String type : types) {
             String typeName = type.split(":")[0].trim();